@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Properties;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the COMPUTE phase of every node over the shared topology snapshot, done by AllPairs with each
+ * algorithm, or node by node with the default engine ("pernode") for comparison.
+ * The all-pairs matrix is O(N^2) memory, so sizes stop at 10^3.
+ */
+@State(Scope.Benchmark)
+public class AllPairsBenchmark extends NetworkBenchmark {
+
+    @Param({"100", "1000"})
+    public int size;
+
+    @Param({"pernode", "floyd", "johnson"})
+    public String algorithm;
+
+    /* The control, null for node by node */
+    private AllPairs allPairs;
+
+    @Override
+    protected int size() {
+        return size;
+    }
+
+    @Override
+    protected void configure(Properties properties) {
+        properties.setProperty("protocol.dvp.shared", "");
+        properties.setProperty("control.ap.protocol", "dvp");
+        properties.setProperty("control.ap.algorithm", algorithm.equals("pernode") ? "auto" : algorithm);
+    }
+
+    @Setup(Level.Trial)
+    public void setUpControl() {
+        allPairs = algorithm.equals("pernode") ? null : new AllPairs("control.ap");
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        restart();
+        /* INITIALISE, then BROADCAST which attaches the shared snapshot */
+        cycle();
+        cycle();
+    }
+
+    @Benchmark
+    public void compute() {
+        if (allPairs != null) {
+            allPairs.execute();
+        } else {
+            cycle();
+        }
+    }
+}
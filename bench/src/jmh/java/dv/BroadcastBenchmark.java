@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the BROADCAST phase of every node in the network, flooding local graphs in linkstate mode.
+ * The flood leaves every node with the whole graph, O(N*E) memory, so sizes stop at 10^3.
+ */
+@State(Scope.Benchmark)
+public class BroadcastBenchmark extends NetworkBenchmark {
+
+    @Param({"100", "1000"})
+    public int size;
+
+    @Override
+    protected int size() {
+        return size;
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        restart();
+        /* INITIALISE */
+        cycle();
+    }
+
+    @Benchmark
+    public void broadcast() {
+        cycle();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Properties;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the COMPUTE phase of a single node over the shared topology snapshot, for each engine.
+ * The source node changes with every invocation.
+ */
+@State(Scope.Benchmark)
+public class ComputeBenchmark extends NetworkBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int size;
+
+    @Param({"bellmanford", "dijkstra", "bucket"})
+    public String engine;
+
+    /* Next source node */
+    private int source;
+
+    @Override
+    protected int size() {
+        return size;
+    }
+
+    @Override
+    protected void configure(Properties properties) {
+        properties.setProperty("protocol.dvp.shared", "");
+        properties.setProperty("protocol.dvp.engine", engine);
+    }
+
+    @Setup(Level.Trial)
+    public void setUpTopology() {
+        /* INITIALISE, then BROADCAST which attaches the shared snapshot */
+        cycle();
+        cycle();
+        source = 0;
+    }
+
+    @Benchmark
+    public DistanceVectorProtocol compute() {
+        DistanceVectorProtocol protocol = protocol(source);
+        protocol.recompute(source);
+        source = (source + 1) % size;
+        return protocol;
+    }
+}
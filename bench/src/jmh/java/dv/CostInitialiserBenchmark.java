@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures CostInitialiser.execute() over an already wired network.
+ */
+@State(Scope.Benchmark)
+public class CostInitialiserBenchmark extends NetworkBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int size;
+
+    @Override
+    protected int size() {
+        return size;
+    }
+
+    @Benchmark
+    public CostStore execute() {
+        costInitialiser.execute();
+        return CostInitialiser.getStore();
+    }
+}
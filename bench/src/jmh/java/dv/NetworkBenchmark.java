@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Network;
+import peersim.core.Node;
+
+/**
+ * Base of the benchmarks: builds a PeerSim network the way the configuration files in ./config do,
+ * wired by a PeerSim wiring control and costed by CostInitialiser.
+ *
+ * PeerSim node IDs come from a JVM-wide counter, so the network is built once per trial and every
+ * parameter combination runs in its own fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public abstract class NetworkBenchmark {
+
+    /* Seed used by the configuration files */
+    private static final long SEED = 1234567880L;
+
+    @Param({"2", "4"})
+    public int degree;
+
+    @Param({"WireKOut", "WireStar", "WireRegRootedTree"})
+    public String wiring;
+
+    /* DistanceVectorProtocol protocol ID */
+    protected int pid;
+    /* CostInitialiser of the network */
+    protected CostInitialiser costInitialiser;
+
+    /**
+     * @return number of nodes in the network
+     */
+    protected abstract int size();
+
+    /**
+     * Adds benchmark specific properties to the configuration.
+     *
+     * @param properties simulation configuration.
+     */
+    protected void configure(Properties properties) { }
+
+    @Setup(Level.Trial)
+    public void setUpNetwork() {
+        Properties properties = new Properties();
+        properties.setProperty("random.seed", Long.toString(SEED));
+        properties.setProperty("network.size", Integer.toString(size()));
+        properties.setProperty("simulation.cycles", "1");
+        properties.setProperty("protocol.link", "peersim.core.IdleProtocol");
+        properties.setProperty("protocol.dvp", "dv.DistanceVectorProtocol");
+        properties.setProperty("protocol.dvp.linkable", "link");
+        properties.setProperty("init.rnd", "peersim.dynamics." + wiring);
+        properties.setProperty("init.rnd.protocol", "link");
+        properties.setProperty("init.rnd.k", Integer.toString(degree));
+        properties.setProperty("init.rnd.undir", "");
+        properties.setProperty("init.ci", "dv.CostInitialiser");
+        properties.setProperty("init.ci.linkable", "link");
+        configure(properties);
+        Configuration.setConfig(properties);
+        CommonState.initializeRandom(SEED);
+        CommonState.setTime(0);
+
+        Network.reset();
+        for (int i = 0; i < Network.size(); i++) {
+            if (Network.get(i).getID() != i) {
+                throw new IllegalStateException("Node IDs do not match indexes, run each trial in its own fork");
+            }
+        }
+        pid = Configuration.lookupPid("dvp");
+        ((Control) Configuration.getInstance("init.rnd")).execute();
+        costInitialiser = new CostInitialiser("init.ci");
+        costInitialiser.execute();
+    }
+
+    /**
+     * Runs one cycle of the protocol on every node.
+     */
+    protected void cycle() {
+        for (int i = 0; i < Network.size(); i++) {
+            Node node = Network.get(i);
+            ((DistanceVectorProtocol) node.getProtocol(pid)).nextCycle(node, pid);
+        }
+    }
+
+    /**
+     * Returns every node to the INITIALISE phase.
+     */
+    protected void restart() {
+        for (int i = 0; i < Network.size(); i++) {
+            protocol(i).restart();
+        }
+    }
+
+    /**
+     * @param i node index.
+     * @return protocol instance of node i
+     */
+    protected DistanceVectorProtocol protocol(int i) {
+        return (DistanceVectorProtocol) Network.get(i).getProtocol(pid);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import peersim.core.Network;
+import peersim.core.Node;
+
+/**
+ * Measures one node receiving the whole network's edge list into its local graph.
+ */
+@State(Scope.Benchmark)
+public class ReceiveBenchmark extends NetworkBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int size;
+
+    /* Every edge of the network */
+    private EdgeList edges;
+
+    @Override
+    protected int size() {
+        return size;
+    }
+
+    @Setup(Level.Trial)
+    public void setUpEdges() {
+        CostStore store = CostInitialiser.getStore();
+        edges = new EdgeList(store.links());
+        for (int i = 0; i < store.size(); i++) {
+            for (int k = store.start(i); k < store.end(i); k++) {
+                edges.add(i, store.neighbour(k), store.cost(k));
+            }
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        Node node = Network.get(0);
+        protocol(0).restart();
+        protocol(0).nextCycle(node, pid);
+    }
+
+    @Benchmark
+    public void receive() {
+        protocol(0).deliver(1, edges);
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.Control;
+import peersim.core.Network;
+import peersim.core.Node;
+
+/**
+ * The control runs the COMPUTE phase of all DistanceVectorProtocol instances as one all-pairs computation
+ * over the network every node learned from the flood, instead of one single-source run per node.
+ *
+ * Dense networks use Floyd-Warshall over an n*n matrix, processed in tiles that fit the cache, after which
+ * the predecessors are found from the edges into each destination. It needs positive costs whose sum fits
+ * the matrix, otherwise Johnson's approach is used: one Dijkstra per node over a single shared adjacency.
+ * CostInitialiser only draws non-negative costs, so Johnson's reweighting is not needed. Tables get the same
+ * costs as the node's own engine would compute, but may pick a different predecessor when two paths cost the same.
+ *
+ * Only nodes that know exactly the network's edges are computed here. Nodes that know it differently,
+ * while link changes are still being flooded, compute in their own cycle as before.
+ * The control does nothing for nodes in vector mode.
+ *
+ * Parameters: "protocol" the DistanceVectorProtocol, "algorithm" floyd, johnson or auto (default) which picks
+ * the cheaper for the network, "maxdense" the largest network auto runs Floyd-Warshall on (default 4096,
+ * a 64 MB matrix), as the matrix grows with the square of the network, "parallelism" the number of worker
+ * threads (defaults to the number of available processors).
+ * PREREQUISITE, must be used for DistanceVectorProtocol protocol in PeerSim.
+ */
+public class AllPairs implements Control {
+
+    private static final String PAR_PROT = "protocol";
+    private static final String PAR_ALGORITHM = "algorithm";
+    private static final String PAR_MAXDENSE = "maxdense";
+    private static final String PAR_PARALLELISM = "parallelism";
+    /* Nodes handled by one task without further splitting */
+    private static final int BATCH = 16;
+    /* Side of a Floyd-Warshall tile */
+    private static final int TILE = 256;
+    /* Cost of an unreached pair in the Floyd-Warshall matrix, twice of it still fits in an int */
+    private static final int UNREACHED = Integer.MAX_VALUE / 2;
+    /* Floyd-Warshall steps costing as much as one Dijkstra step, measured */
+    private static final int DIJKSTRA_STEP = 64;
+
+    /* Enumerated algorithms */
+    private enum Algorithm {
+        AUTO, FLOYD, JOHNSON
+    }
+
+    private final int pid;                  //DistanceVectorProtocol protocol ID
+    private final Algorithm algorithm;      //chosen algorithm
+    private final int maxDense;             //largest network for Floyd-Warshall in auto
+    private final ForkJoinPool pool;        //worker threads
+
+    /**
+     * A constructor
+     *
+     * @param prefix a string provided by PeerSim and used to access parameters from the configuration file.
+     */
+    public AllPairs(String prefix) {
+        this.pid = Configuration.getPid(prefix + "." + PAR_PROT);
+        String name = Configuration.getString(prefix + "." + PAR_ALGORITHM, "auto");
+        try {
+            this.algorithm = Algorithm.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalParameterException(prefix + "." + PAR_ALGORITHM, "Unknown algorithm " + name);
+        }
+        this.maxDense = Configuration.getInt(prefix + "." + PAR_MAXDENSE, 4096);
+        int parallelism = Configuration.getInt(prefix + "." + PAR_PARALLELISM,
+                Runtime.getRuntime().availableProcessors());
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    /**
+     * Implementation of the common method. This method is called in each cycle.
+     */
+    @Override
+    public boolean execute() {
+        long start = System.nanoTime();
+        int size = Network.size();
+        DistanceVectorProtocol[] protocols = new DistanceVectorProtocol[size];
+        Topology network = null;
+        for (int i = 0; i < size; i++) {
+            Node node = Network.get(i);
+            DistanceVectorProtocol protocol = (DistanceVectorProtocol) node.getProtocol(pid);
+            if (node.isUp() && protocol.needsCompute()) {
+                protocols[i] = protocol;
+                if (network == null) {
+                    network = protocol.network(pid);
+                }
+            }
+        }
+        if (network == null) {
+            return false;
+        }
+        /* Keep the nodes whose graph is the network's */
+        final Topology snapshot = network;
+        run(0, size, BATCH, i -> {
+            if (protocols[i] == null) {
+                return;
+            }
+            protocols[i].follow();
+            if (!protocols[i].knows(snapshot)) {
+                protocols[i] = null;
+            }
+        });
+        int[] sources = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (protocols[i] != null) {
+                sources[count++] = i;
+            }
+        }
+        if (count > 0) {
+            if (floyd(network, count)) {
+                floydWarshall(network, Arrays.copyOf(sources, count), protocols);
+            } else {
+                johnson(network, Arrays.copyOf(sources, count), protocols);
+            }
+        }
+        Metrics.time(DistanceVectorProtocol.State.COMPUTE, System.nanoTime() - start);
+        return false;
+    }
+
+    /**
+     * Tells whether Floyd-Warshall applies and, unless chosen explicitly, is the cheaper algorithm and its matrix
+     * is small enough.
+     *
+     * @param network the network.
+     * @param sources number of tables to compute.
+     * @return true for Floyd-Warshall, false for Johnson
+     */
+    private boolean floyd(Topology network, int sources) {
+        if (algorithm == Algorithm.JOHNSON || (algorithm == Algorithm.AUTO && network.size > maxDense)) {
+            return false;
+        }
+        /* Path costs must stay below the matrix's unreached value, and be positive for the predecessors */
+        long total = 0;
+        for (int e = 0; e < network.edges(); e++) {
+            int c = network.cost(e);
+            if (c == DistanceVector.INFINITY) {
+                continue;
+            }
+            if (c <= 0) {
+                return false;
+            }
+            total += c;
+        }
+        if (total >= UNREACHED) {
+            return false;
+        }
+        if (algorithm == Algorithm.FLOYD) {
+            return true;
+        }
+        long n = network.size;
+        int log = 32 - Integer.numberOfLeadingZeros(network.size);
+        return n * n * n <= sources * (network.links() + n * log) * DIJKSTRA_STEP;
+    }
+
+    /**
+     * Runs Dijkstra from every source over one adjacency of the network's edges.
+     */
+    private void johnson(Topology network, int[] sources, DistanceVectorProtocol[] protocols) {
+        int n = network.size;
+        int m = network.edges();
+        int[] offset = new int[n + 1];
+        int[] adj = new int[m];
+        int[] dst = new int[m];
+        int[] cost = new int[m];
+        for (int e = 0; e < m; e++) {
+            adj[e] = e;
+            dst[e] = network.destination(e);
+            cost[e] = network.cost(e);
+        }
+        for (int i = 0; i <= n; i++) {
+            offset[i] = network.start(i);
+        }
+        run(0, sources.length, 1, k -> {
+            int s = sources[k];
+            DistanceVector result = new DistanceVector(s, n);
+            Dijkstra.search(s, n, offset, adj, dst, cost, result.cost, result.via);
+            protocols[s].install(result);
+        });
+        Metrics.rounds.add(sources.length);
+        Metrics.relaxations.add((long) sources.length * network.links());
+    }
+
+    /**
+     * Runs tiled Floyd-Warshall over the whole network, then gives each source its row
+     * with the predecessors found from the edges into every destination.
+     */
+    private void floydWarshall(Topology network, int[] sources, DistanceVectorProtocol[] protocols) {
+        int n = network.size;
+        int[][] dist = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(dist[i], UNREACHED);
+            dist[i][i] = 0;
+            for (int e = network.start(i); e < network.start(i + 1); e++) {
+                int j = network.destination(e);
+                dist[i][j] = Math.min(dist[i][j], network.cost(e));
+            }
+        }
+        int tiles = (n + TILE - 1) / TILE;
+        for (int kt = 0; kt < tiles; kt++) {
+            final int kb = kt * TILE;
+            /* The tile on the diagonal, then its row and column, then the rest */
+            relax(dist, n, kb, kb, kb);
+            run(0, tiles, 1, t -> {
+                if (t * TILE != kb) {
+                    relax(dist, n, kb, t * TILE, kb);
+                    relax(dist, n, t * TILE, kb, kb);
+                }
+            });
+            run(0, tiles, 1, it -> {
+                if (it * TILE == kb) {
+                    return;
+                }
+                for (int jt = 0; jt < tiles; jt++) {
+                    if (jt * TILE != kb) {
+                        relax(dist, n, it * TILE, jt * TILE, kb);
+                    }
+                }
+            });
+        }
+        /* Edges grouped by destination */
+        int m = network.edges();
+        int[] inOffset = new int[n + 1];
+        int[] inSource = new int[m];
+        int[] inCost = new int[m];
+        for (int e = 0; e < m; e++) {
+            inOffset[network.destination(e) + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            inOffset[i + 1] += inOffset[i];
+        }
+        int[] fill = Arrays.copyOf(inOffset, n);
+        for (int i = 0; i < n; i++) {
+            for (int e = network.start(i); e < network.start(i + 1); e++) {
+                int k = fill[network.destination(e)]++;
+                inSource[k] = i;
+                inCost[k] = network.cost(e);
+            }
+        }
+        run(0, sources.length, BATCH, k -> {
+            int s = sources[k];
+            int[] row = dist[s];
+            DistanceVector result = new DistanceVector(s, n);
+            for (int j = 0; j < n; j++) {
+                if (j != s && row[j] != UNREACHED) {
+                    result.cost[j] = row[j];
+                    result.via[j] = -1;
+                }
+            }
+            /* Same convention as the engines, a direct neighbour on a shortest path is its own predecessor */
+            for (int e = network.start(s); e < network.start(s + 1); e++) {
+                int j = network.destination(e);
+                if (j != s && network.cost(e) == row[j]) {
+                    result.via[j] = j;
+                }
+            }
+            /* Otherwise the last node before j is one whose cost plus its edge to j is j's cost */
+            for (int j = 0; j < n; j++) {
+                if (result.via[j] >= 0) {
+                    continue;
+                }
+                for (int e = inOffset[j]; e < inOffset[j + 1]; e++) {
+                    int u = inSource[e];
+                    if (row[u] != UNREACHED && inCost[e] != DistanceVector.INFINITY && row[u] + inCost[e] == row[j]) {
+                        result.via[j] = u;
+                        break;
+                    }
+                }
+            }
+            protocols[s].install(result);
+        });
+        Metrics.rounds.add(n);
+        Metrics.relaxations.add((long) n * n * n);
+    }
+
+    /**
+     * Relaxes one tile of the matrix through the intermediate nodes of another tile.
+     * The minimum is taken without branches so that the inner loop is vectorised.
+     *
+     * @param ib first row of the tile.
+     * @param jb first column of the tile.
+     * @param kb first intermediate node.
+     */
+    private static void relax(int[][] dist, int n, int ib, int jb, int kb) {
+        int iEnd = Math.min(ib + TILE, n), jEnd = Math.min(jb + TILE, n), kEnd = Math.min(kb + TILE, n);
+        for (int k = kb; k < kEnd; k++) {
+            int[] dk = dist[k];
+            for (int i = ib; i < iEnd; i++) {
+                int[] di = dist[i];
+                int dik = di[k];
+                /* Nothing to add through an unreached node */
+                if (dik == UNREACHED) {
+                    continue;
+                }
+                for (int j = jb; j < jEnd; j++) {
+                    /* Both terms are below UNREACHED, so neither the sum nor the difference overflows */
+                    int delta = dik + dk[j] - di[j];
+                    di[j] += delta & (delta >> 31);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs work for every index of a range on the pool.
+     */
+    private void run(int from, int to, int batch, IntConsumer work) {
+        pool.invoke(new Batch(from, to, batch, work));
+    }
+
+    /**
+     * Runs a range of indexes, splitting it in halves while it is larger than a batch.
+     */
+    private static class Batch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final int from, to, batch;
+        private final IntConsumer work;
+
+        Batch(int from, int to, int batch, IntConsumer work) {
+            this.from = from;
+            this.to = to;
+            this.batch = batch;
+            this.work = work;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > batch) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Batch(from, mid, batch, work), new Batch(mid, to, batch, work));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                work.accept(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.CommonState;
+import peersim.core.Control;
+
+/**
+ * The initialiser partitions the network into areas for the "area" mode of DistanceVectorProtocol and
+ * publishes the result as a global AreaMap.
+ *
+ * By default "areas" random seed nodes grow their areas breadth-first over the cost store's links, one node
+ * per area in turn, so areas are connected and of similar size. Parts of the network no seed reaches become
+ * areas of their own. Alternatively "file" gives the mapping, one "node area" pair per line, with '#' or '%'
+ * starting a comment. Area names may be any integers, every node must be listed, and each area should be
+ * connected, as routes inside an area only use the area's own links.
+ *
+ * Parameters: "areas" number of areas (defaults to the square root of the network size), "file" mapping
+ * to read instead, "outf" optional file to write the mapping to in the same format.
+ * PREREQUISITE, must be declared after CostInitialiser or EdgeListLoader.
+ */
+public class AreaInitialiser implements Control {
+
+    private static final String PAR_AREAS = "areas";
+    private static final String PAR_FILE = "file";
+    private static final String PAR_FILEPATH = "outf";
+
+    /* Global partition */
+    private static AreaMap map;
+
+    private final String prefix;            //configuration prefix, for error messages
+    private final int areas;                //number of areas to grow, 0 for the default
+    private final String file;              //mapping to read, null to grow areas
+    private final String outf;              //mapping to write, null for none
+
+    /**
+     * A constructor
+     *
+     * @param prefix a string provided by PeerSim and used to access parameters from the configuration file.
+     */
+    public AreaInitialiser(String prefix) {
+        this.prefix = prefix;
+        this.areas = Configuration.getInt(prefix + "." + PAR_AREAS, 0);
+        if (areas < 0) {
+            throw new IllegalParameterException(prefix + "." + PAR_AREAS, "Must not be negative");
+        }
+        this.file = Configuration.getString(prefix + "." + PAR_FILE, null);
+        this.outf = Configuration.getString(prefix + "." + PAR_FILEPATH, null);
+    }
+
+    /**
+     * Global access to the partition.
+     *
+     * @return the partition, or null before the initialiser ran
+     */
+    public static AreaMap getMap() {
+        return map;
+    }
+
+    /**
+     * Computes the table of a node's own area over the area's links and starts its area vector.
+     * Used by DistanceVectorProtocol.
+     *
+     * @param node node ID.
+     * @param engine shortest path algorithm.
+     * @return the node's table
+     */
+    static AreaTable table(int node, PathEngine engine) {
+        int area = map.area(node);
+        int local = map.index(node);
+        Topology links = map.topology(area);
+        int[] dist = new int[links.size];
+        int[] pred = new int[links.size];
+        int rounds = links.shortestPaths(engine, local, dist, pred);
+        Metrics.rounds.add(rounds);
+        Metrics.relaxations.add((long) rounds * links.edges());
+        /* Next hops in local indexes, turned into node IDs */
+        int[] hop = Routes.nextHops(local, dist, pred);
+        for (int k = 0; k < hop.length; k++) {
+            if (hop[k] >= 0) {
+                hop[k] = map.member(area, hop[k]);
+            }
+        }
+        return new AreaTable(node, area, dist, hop, map.areas());
+    }
+
+    /**
+     * Forgets the partition of the previous experiment. Called by Sweep before a run in a reused class loader.
+     */
+    static void reset() {
+        map = null;
+    }
+
+    /**
+     * Implementation of the common method. This method is called once at simulation start time.
+     */
+    @Override
+    public boolean execute() {
+        CostStore store = CostInitialiser.getStore();
+        int n = store.size();
+        int[] area = new int[n];
+        int count;
+        if (file != null) {
+            try {
+                count = read(area);
+            } catch (IOException | IllegalArgumentException e) {
+                throw new IllegalParameterException(prefix + "." + PAR_FILE, e.getMessage());
+            }
+        } else {
+            int k = areas > 0 ? areas : (int) Math.max(1, Math.round(Math.sqrt(n)));
+            count = grow(store, Math.min(k, Math.max(1, n)), area);
+        }
+        map = new AreaMap(area, count, store);
+        if (outf != null) {
+            try {
+                write(area);
+            } catch (IOException e) {
+                throw new IllegalParameterException(prefix + "." + PAR_FILEPATH, e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Grows areas from random seeds, one node per area in turn.
+     *
+     * @param store link costs.
+     * @param k number of seeds.
+     * @param area output area per node ID.
+     * @return number of areas
+     */
+    private static int grow(CostStore store, int k, int[] area) {
+        int n = area.length;
+        Arrays.fill(area, -1);
+        /* Breadth-first queues, one per area */
+        int[][] queue = new int[k][];
+        int[] head = new int[k], tail = new int[k];
+        /* Next link to look at of each queue's oldest node, -1 for its first */
+        int[] cursor = new int[k];
+        Arrays.fill(cursor, -1);
+        int[] active = new int[k];
+        int seeded = 0;
+        while (seeded < k) {
+            int seed = CommonState.r.nextInt(n);
+            if (area[seed] < 0) {
+                area[seed] = seeded;
+                queue[seeded] = new int[16];
+                queue[seeded][tail[seeded]++] = seed;
+                active[seeded] = seeded;
+                seeded++;
+            }
+        }
+        int live = k;
+        while (live > 0) {
+            for (int r = 0; r < live; ) {
+                int a = active[r];
+                /* Next free neighbour of the oldest node in the area's queue */
+                int grown = -1;
+                while (grown < 0 && head[a] < tail[a]) {
+                    int u = queue[a][head[a]];
+                    int e = cursor[a] < 0 ? store.start(u) : cursor[a];
+                    for (; e < store.end(u); e++) {
+                        int v = store.neighbour(e);
+                        if (area[v] < 0 && store.cost(e) != CostStore.NO_LINK) {
+                            area[v] = a;
+                            grown = v;
+                            e++;
+                            break;
+                        }
+                    }
+                    if (grown < 0) {
+                        head[a]++;
+                        cursor[a] = -1;
+                    } else {
+                        cursor[a] = e;
+                    }
+                }
+                if (grown < 0) {
+                    /* Nothing left to reach */
+                    active[r] = active[--live];
+                    continue;
+                }
+                if (tail[a] == queue[a].length) {
+                    queue[a] = Arrays.copyOf(queue[a], tail[a] << 1);
+                }
+                queue[a][tail[a]++] = grown;
+                r++;
+            }
+        }
+        /* Unreached parts of the network become areas of their own */
+        int count = k;
+        int[] stack = null;
+        for (int i = 0; i < n; i++) {
+            if (area[i] >= 0) {
+                continue;
+            }
+            if (stack == null) {
+                stack = new int[n];
+            }
+            int top = 0;
+            area[i] = count;
+            stack[top++] = i;
+            while (top > 0) {
+                int u = stack[--top];
+                for (int e = store.start(u); e < store.end(u); e++) {
+                    int v = store.neighbour(e);
+                    if (area[v] < 0 && store.cost(e) != CostStore.NO_LINK) {
+                        area[v] = count;
+                        stack[top++] = v;
+                    }
+                }
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Reads the mapping, numbering areas in order of first appearance.
+     *
+     * @param area output area per node ID.
+     * @return number of areas
+     */
+    private int read(int[] area) throws IOException {
+        Arrays.fill(area, -1);
+        Map<Integer, Integer> names = new HashMap<>();
+        int line = 0;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.US_ASCII)) {
+            for (String text = reader.readLine(); text != null; text = reader.readLine()) {
+                line++;
+                text = text.trim();
+                if (text.isEmpty() || text.charAt(0) == '#' || text.charAt(0) == '%') {
+                    continue;
+                }
+                String[] fields = text.split("[\\s,]+");
+                if (fields.length != 2) {
+                    throw new IllegalArgumentException("Expected node and area at line " + line);
+                }
+                int node, name;
+                try {
+                    node = Integer.parseInt(fields[0]);
+                    name = Integer.parseInt(fields[1]);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Bad number at line " + line);
+                }
+                if (node < 0 || node >= area.length) {
+                    throw new IllegalArgumentException("Node " + node + " out of range at line " + line);
+                }
+                Integer a = names.get(name);
+                if (a == null) {
+                    a = names.size();
+                    names.put(name, a);
+                }
+                area[node] = a;
+            }
+        }
+        for (int i = 0; i < area.length; i++) {
+            if (area[i] < 0) {
+                throw new IllegalArgumentException("Node " + i + " has no area");
+            }
+        }
+        return names.size();
+    }
+
+    /**
+     * Writes the mapping.
+     *
+     * @param area area per node ID.
+     */
+    private void write(int[] area) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(outf), StandardCharsets.US_ASCII)) {
+            writer.write("# node area\n");
+            for (int i = 0; i < area.length; i++) {
+                writer.write(i + " " + area[i] + "\n");
+            }
+        }
+    }
+}
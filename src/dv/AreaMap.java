@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The class is an immutable partition of the network into areas, built by AreaInitialiser.
+ * Nodes of an area are numbered 0..size-1 in node ID order, their local index. Each area has a shared
+ * Topology snapshot of the links between its own nodes, in local indexes, which the nodes of the area
+ * compute their routes over.
+ */
+public final class AreaMap {
+
+    private final int[] area;               //area per node ID
+    private final int[] start;              //start of each area's members, areas+1 entries
+    private final int[] members;            //node IDs grouped by area
+    private final int[] index;              //local index per node ID
+    private final Topology[] topology;      //links inside each area, in local indexes
+
+    /**
+     * Builds the map and the snapshot of every area.
+     *
+     * @param area area per node ID, from 0 to areas-1.
+     * @param areas number of areas.
+     * @param store link costs.
+     */
+    public AreaMap(int[] area, int areas, CostStore store) {
+        int n = area.length;
+        this.area = area;
+        this.start = new int[areas + 1];
+        this.members = new int[n];
+        this.index = new int[n];
+        for (int i = 0; i < n; i++) {
+            start[area[i] + 1]++;
+        }
+        for (int a = 0; a < areas; a++) {
+            start[a + 1] += start[a];
+        }
+        int[] fill = new int[areas];
+        for (int i = 0; i < n; i++) {
+            int a = area[i];
+            index[i] = fill[a]++;
+            members[start[a] + index[i]] = i;
+        }
+        this.topology = new Topology[areas];
+        for (int a = 0; a < areas; a++) {
+            List<EdgeList> local = new ArrayList<>(size(a));
+            for (int k = 0; k < size(a); k++) {
+                int i = members[start[a] + k];
+                EdgeList edges = new EdgeList(store.degree(i));
+                for (int e = store.start(i); e < store.end(i); e++) {
+                    int j = store.neighbour(e);
+                    if (area[j] == a) {
+                        edges.add(k, index[j], store.cost(e));
+                    }
+                }
+                local.add(edges);
+            }
+            topology[a] = new Topology(local);
+        }
+    }
+
+    /**
+     * @return number of areas
+     */
+    public int areas() {
+        return topology.length;
+    }
+
+    /**
+     * @param i node ID.
+     * @return area of the node
+     */
+    public int area(int i) {
+        return area[i];
+    }
+
+    /**
+     * @param a area.
+     * @return number of nodes in the area
+     */
+    public int size(int a) {
+        return start[a + 1] - start[a];
+    }
+
+    /**
+     * @param a area.
+     * @param k local index.
+     * @return node ID of the area's k-th node
+     */
+    public int member(int a, int k) {
+        return members[start[a] + k];
+    }
+
+    /**
+     * @param i node ID.
+     * @return local index of the node in its area
+     */
+    public int index(int i) {
+        return index[i];
+    }
+
+    /**
+     * @param a area.
+     * @return links between the area's nodes, in local indexes
+     */
+    public Topology topology(int a) {
+        return topology[a];
+    }
+}
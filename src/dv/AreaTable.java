@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Arrays;
+
+/**
+ * The class represents the routing table of a node in the "area" mode of DistanceVectorProtocol:
+ * a full table of the members of the node's own area, and a distance vector of the other areas.
+ *
+ * The entry of another area holds the cost of the shortest path into the area, that is to its nearest
+ * member, and the next hop on that path. A packet for a node of another area follows these next hops
+ * until it enters the area, then the area's own routes to the destination.
+ */
+public class AreaTable {
+
+    public final int owner;             //owner node ID
+    public final int area;              //owner's area
+    public final int[] cost;            //path cost per member of the own area, by local index
+    public final int[] hop;             //next hop node ID per member of the own area, -1 if none
+    public final int[] areaCost;        //cost of the shortest path into each area
+    public final int[] areaHop;         //next hop node ID towards each area
+    private final boolean[] dirty;      //area changed since last advertisement
+    private final int[] changes;        //changed areas, in order of change
+    private int changeCount;            //number of changed areas
+
+    /**
+     * A constructor. Every other area starts unreachable and the own area is marked as changed.
+     *
+     * @param owner owner node ID.
+     * @param area owner's area.
+     * @param cost path cost per member of the own area.
+     * @param hop next hop node ID per member of the own area.
+     * @param areas number of areas.
+     */
+    public AreaTable(int owner, int area, int[] cost, int[] hop, int areas) {
+        this.owner = owner;
+        this.area = area;
+        this.cost = cost;
+        this.hop = hop;
+        this.areaCost = new int[areas];
+        this.areaHop = new int[areas];
+        this.dirty = new boolean[areas];
+        this.changes = new int[areas];
+        for (int b = 0; b < areas; b++) {
+            areaCost[b] = DistanceVector.INFINITY;
+            areaHop[b] = -1;
+        }
+        areaCost[area] = 0;
+        areaHop[area] = owner;
+        markChanged(area);
+    }
+
+    /**
+     * Bellman-Ford update with a neighbour's area vector. Equal costs go to the lower next hop,
+     * so that the final table does not depend on the order in which updates arrive.
+     * Costs only ever fall, as the topology of area mode does not change.
+     *
+     * @param linkCost cost of the link between the owner and the sender.
+     * @param update areas changed at the sender.
+     * @return number of areas whose route changed
+     */
+    public int merge(int linkCost, VectorUpdate update) {
+        int changed = 0;
+        int from = update.source;
+        for (int k = 0; k < update.size; k++) {
+            int b = update.destination[k];
+            if (b == area || update.cost[k] == DistanceVector.INFINITY) {
+                continue;
+            }
+            long sum = (long) update.cost[k] + linkCost;
+            int offered = sum >= DistanceVector.INFINITY ? DistanceVector.INFINITY : (int) sum;
+            if (offered < areaCost[b] || (offered == areaCost[b] && offered != DistanceVector.INFINITY
+                    && from < areaHop[b])) {
+                areaCost[b] = offered;
+                areaHop[b] = from;
+                markChanged(b);
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Next hop towards a destination, from the own area's table or the route into the destination's area.
+     *
+     * @param destination destination node ID.
+     * @param map the partition.
+     * @return next hop node ID, -1 for the owner and unreachable destinations
+     */
+    public int nextHop(int destination, AreaMap map) {
+        int b = map.area(destination);
+        if (b == area) {
+            return hop[map.index(destination)];
+        }
+        return areaHop[b];
+    }
+
+    /**
+     * @return number of entries kept, own area members plus areas
+     */
+    public int entries() {
+        return cost.length + areaCost.length;
+    }
+
+    /**
+     * @return number of members of the own area with a route, the owner excluded
+     */
+    public int reachable() {
+        int count = 0;
+        for (int h : hop) {
+            if (h >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return true if some areas changed since the last advertisement
+     */
+    public boolean hasChanges() {
+        return changeCount > 0;
+    }
+
+    /**
+     * Encodes the areas changed since the last advertisement in the wire format and clears the change set.
+     * The entries' destinations are area numbers, and their predecessor and next hop are both the next hop.
+     *
+     * @return the message, held by the caller, or null if nothing changed
+     */
+    public VectorMessage drainMessage() {
+        if (changeCount == 0) {
+            return null;
+        }
+        Arrays.sort(changes, 0, changeCount);
+        VectorMessage message = VectorMessage.encode(owner, changes, changeCount, areaCost, areaHop, areaHop);
+        for (int k = 0; k < changeCount; k++) {
+            dirty[changes[k]] = false;
+        }
+        changeCount = 0;
+        return message;
+    }
+
+    /**
+     * Adds an area to the change set.
+     *
+     * @param b area.
+     */
+    private void markChanged(int b) {
+        if (!dirty[b]) {
+            dirty[b] = true;
+            changes[changeCount++] = b;
+        }
+    }
+}
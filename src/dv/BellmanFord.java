@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Arrays;
+
+/**
+ * The class implements the Bellman-Ford algorithm over primitive arrays.
+ * Edges are given as parallel source/destination/cost arrays and the result is written
+ * into distance and predecessor arrays indexed by node ID.
+ *
+ * The predecessor of a destination is the last node before it on the path,
+ * or the destination itself when it is a direct neighbour of the source.
+ * This is the default PathEngine and the only one that accepts negative costs.
+ */
+public final class BellmanFord implements PathEngine {
+
+    @Override
+    public int shortestPaths(int source, int n, int[] src, int[] dst, int[] cost, int m,
+                             int first, int firstEnd, int[] dist, int[] pred) {
+        return compute(source, n, src, dst, cost, m, first, firstEnd, dist, pred);
+    }
+
+    /**
+     * Relaxes the source's row first in every round, then the other rows in ID order, which is the order
+     * of the flat variant over edges stored row by row with the source's row as the preferred range.
+     */
+    @Override
+    public int shortestPaths(int source, int n, int[] offset, int[] adj, int[] dst, int[] cost,
+                             Topology.Patch patch, int[] dist, int[] pred) {
+        /* Initialise distances */
+        Arrays.fill(dist, 0, n, Integer.MAX_VALUE);
+        for (int i = 0; i < n; i++) {
+            pred[i] = i;
+        }
+        /* Source node costs 0 */
+        dist[source] = 0;
+        /* Relax rows repeatedly, stop early once a round changes nothing */
+        int rounds = 0;
+        boolean changed = true;
+        while (changed && rounds < n - 1) {
+            rounds++;
+            changed = relaxRow(source, source, offset, adj, dst, cost, patch, dist, pred);
+            for (int u = 0; u < n; u++) {
+                if (u != source) {
+                    changed |= relaxRow(source, u, offset, adj, dst, cost, patch, dist, pred);
+                }
+            }
+        }
+        /* Check for negative-weight cycles */
+        if (changed) {
+            for (int u = 0; u < n; u++) {
+                int r = patch == null ? -1 : patch.row(u);
+                int[] rowAdj = r >= 0 ? null : adj, rowDst = r >= 0 ? patch.dst : dst;
+                int[] rowCost = r >= 0 ? patch.cost : cost;
+                int from = r >= 0 ? patch.offset[r] : offset[u], to = r >= 0 ? patch.offset[r + 1] : offset[u + 1];
+                for (int k = from; k < to; k++) {
+                    int e = rowAdj == null ? k : rowAdj[k];
+                    if (dist[u] != Integer.MAX_VALUE && rowCost[e] != Integer.MAX_VALUE
+                            && dist[u] + rowCost[e] < dist[rowDst[e]]) {
+                        System.out.println("Graph contains a negative-weight cycle");
+                    }
+                }
+            }
+        }
+        return rounds;
+    }
+
+    /**
+     * Computes shortest paths from a single source.
+     *
+     * @param source source node ID.
+     * @param n number of nodes.
+     * @param src edge source node IDs.
+     * @param dst edge destination node IDs.
+     * @param cost edge costs.
+     * @param m number of edges in the arrays.
+     * @param dist output distances, at least n long.
+     * @param pred output predecessors, at least n long.
+     * @return number of relaxation rounds performed
+     */
+    public static int compute(int source, int n, int[] src, int[] dst, int[] cost, int m,
+                              int[] dist, int[] pred) {
+        return compute(source, n, src, dst, cost, m, 0, 0, dist, pred);
+    }
+
+    /**
+     * Computes shortest paths from a single source, relaxing a range of edges before the others
+     * in every round. Edges with a cost of Integer.MAX_VALUE are ignored.
+     *
+     * @param source source node ID.
+     * @param n number of nodes.
+     * @param src edge source node IDs.
+     * @param dst edge destination node IDs.
+     * @param cost edge costs.
+     * @param m number of edges in the arrays.
+     * @param first start of the range relaxed first.
+     * @param firstEnd end of the range relaxed first.
+     * @param dist output distances, at least n long.
+     * @param pred output predecessors, at least n long.
+     * @return number of relaxation rounds performed
+     */
+    public static int compute(int source, int n, int[] src, int[] dst, int[] cost, int m,
+                              int first, int firstEnd, int[] dist, int[] pred) {
+        /* Initialise distances */
+        Arrays.fill(dist, 0, n, Integer.MAX_VALUE);
+        for (int i = 0; i < n; i++) {
+            pred[i] = i;
+        }
+        /* Source node costs 0 */
+        dist[source] = 0;
+        /* Relax edges repeatedly, stop early once a round changes nothing */
+        int rounds = 0;
+        boolean changed = true;
+        while (changed && rounds < n - 1) {
+            rounds++;
+            /* For every edge, the first range before the rest */
+            changed = relax(source, src, dst, cost, first, firstEnd, dist, pred);
+            changed |= relax(source, src, dst, cost, 0, first, dist, pred);
+            changed |= relax(source, src, dst, cost, firstEnd, m, dist, pred);
+        }
+        /* Check for negative-weight cycles */
+        if (changed) {
+            for (int e = 0; e < m; e++) {
+                if (dist[src[e]] != Integer.MAX_VALUE && cost[e] != Integer.MAX_VALUE
+                        && dist[src[e]] + cost[e] < dist[dst[e]]) {
+                    System.out.println("Graph contains a negative-weight cycle");
+                }
+            }
+        }
+        return rounds;
+    }
+
+    /**
+     * Relaxes the edges leaving one node once, from the patch if it replaces the node's row.
+     *
+     * @return true if some distance decreased
+     */
+    private static boolean relaxRow(int source, int u, int[] offset, int[] adj, int[] dst, int[] cost,
+                                    Topology.Patch patch, int[] dist, int[] pred) {
+        int base = dist[u];
+        /* Skip unreached rows, can't add to infinity */
+        if (base == Integer.MAX_VALUE) {
+            return false;
+        }
+        int from = offset[u], to = offset[u + 1];
+        int r = patch == null ? -1 : patch.row(u);
+        if (r >= 0) {
+            adj = null;
+            dst = patch.dst;
+            cost = patch.cost;
+            from = patch.offset[r];
+            to = patch.offset[r + 1];
+        }
+        boolean changed = false;
+        for (int k = from; k < to; k++) {
+            int e = adj == null ? k : adj[k];
+            /* Skip removed edges */
+            if (cost[e] == Integer.MAX_VALUE) {
+                continue;
+            }
+            /* Update if cost has decreased */
+            int d = dst[e];
+            int newCost = base + cost[e];
+            if (newCost < dist[d]) {
+                dist[d] = newCost;
+                /* If direct path */
+                pred[d] = (u == source) ? d : u;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Relaxes a range of edges once.
+     *
+     * @return true if some distance decreased
+     */
+    private static boolean relax(int source, int[] src, int[] dst, int[] cost, int from, int to,
+                                 int[] dist, int[] pred) {
+        boolean changed = false;
+        for (int e = from; e < to; e++) {
+            int s = src[e];
+            int base = dist[s];
+            /* Skip unreached (can't add to infinity) and removed edges */
+            if (base == Integer.MAX_VALUE || cost[e] == Integer.MAX_VALUE) {
+                continue;
+            }
+            /* Update if cost has decreased */
+            int d = dst[e];
+            int newCost = base + cost[e];
+            if (newCost < dist[d]) {
+                dist[d] = newCost;
+                /* If direct path */
+                pred[d] = (s == source) ? d : s;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
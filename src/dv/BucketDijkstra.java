@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Arrays;
+
+/**
+ * The class implements Dial's variant of Dijkstra's algorithm. Queued nodes are kept in a circular
+ * array of C+1 buckets, C being the largest edge cost, so every queue operation is O(1) and the
+ * whole run is O(E + V*C). It suits the small integer costs (1..20) produced by CostInitialiser.
+ * Graphs with larger costs fall back to the heap-based Dijkstra.
+ */
+public final class BucketDijkstra implements PathEngine {
+
+    /* Largest edge cost handled with buckets */
+    private static final int MAX_BUCKET_COST = 1 << 16;
+    /* End of a bucket list, and bucket of a node that is not queued */
+    private static final int NONE = -1;
+
+    @Override
+    public int shortestPaths(int source, int n, int[] src, int[] dst, int[] cost, int m,
+                             int first, int firstEnd, int[] dist, int[] pred) {
+        /* Largest finite cost decides the number of buckets */
+        int maxCost = 0;
+        for (int e = 0; e < m; e++) {
+            if (cost[e] != Integer.MAX_VALUE && cost[e] > maxCost) {
+                maxCost = cost[e];
+            }
+        }
+        if (maxCost > MAX_BUCKET_COST) {
+            return new Dijkstra().shortestPaths(source, n, src, dst, cost, m, first, firstEnd, dist, pred);
+        }
+        int[] offset = new int[n + 1];
+        int[] adj = Dijkstra.adjacency(n, src, m, first, firstEnd, offset);
+        return search(source, n, offset, adj, dst, cost, null, maxCost, dist, pred);
+    }
+
+    @Override
+    public int shortestPaths(int source, int n, int[] offset, int[] adj, int[] dst, int[] cost,
+                             Topology.Patch patch, int[] dist, int[] pred) {
+        int maxCost = 0;
+        for (int k = 0; k < offset[n]; k++) {
+            int c = cost[adj == null ? k : adj[k]];
+            if (c != Integer.MAX_VALUE && c > maxCost) {
+                maxCost = c;
+            }
+        }
+        if (patch != null) {
+            for (int c : patch.cost) {
+                if (c != Integer.MAX_VALUE && c > maxCost) {
+                    maxCost = c;
+                }
+            }
+        }
+        if (maxCost > MAX_BUCKET_COST) {
+            return Dijkstra.search(source, n, offset, adj, dst, cost, patch, dist, pred);
+        }
+        return search(source, n, offset, adj, dst, cost, patch, maxCost, dist, pred);
+    }
+
+    @Override
+    public int shortestPaths(int source, int n, EdgeList edges, int[] dist, int[] pred) {
+        int[] offset = edges.rowStarts(n);
+        return shortestPaths(source, n, offset, edges.rowEdges(), edges.destinations(), edges.costs(), null,
+                dist, pred);
+    }
+
+    /**
+     * Computes shortest paths over edges grouped by source node, see PathEngine.
+     *
+     * @param maxCost largest finite edge cost, at most MAX_BUCKET_COST.
+     * @return number of passes over the edges, always 1
+     */
+    private static int search(int source, int n, int[] offset, int[] adj, int[] dst, int[] cost,
+                              Topology.Patch patch, int maxCost, int[] dist, int[] pred) {
+        /* Initialise distances */
+        Arrays.fill(dist, 0, n, Integer.MAX_VALUE);
+        for (int i = 0; i < n; i++) {
+            pred[i] = i;
+        }
+        dist[source] = 0;
+        /* Buckets as doubly linked lists of node IDs */
+        int buckets = maxCost + 1;
+        int[] head = new int[buckets];
+        Arrays.fill(head, NONE);
+        int[] next = new int[n];
+        int[] prev = new int[n];
+        boolean[] queued = new boolean[n];
+        boolean[] settled = new boolean[n];
+        insert(source, 0, head, next, prev, queued);
+        int count = 1;
+        for (int current = 0; count > 0; current++) {
+            int b = current % buckets;
+            while (head[b] != NONE) {
+                /* Every node in the current bucket is at the current distance */
+                int u = head[b];
+                remove(u, b, head, next, prev, queued);
+                count--;
+                settled[u] = true;
+                /* Relax its edges, from the patch if it replaces the row */
+                int[] rowAdj = adj, rowDst = dst, rowCost = cost;
+                int from = offset[u], to = offset[u + 1];
+                int r = patch == null ? -1 : patch.row(u);
+                if (r >= 0) {
+                    rowAdj = null;
+                    rowDst = patch.dst;
+                    rowCost = patch.cost;
+                    from = patch.offset[r];
+                    to = patch.offset[r + 1];
+                }
+                for (int k = from; k < to; k++) {
+                    int e = rowAdj == null ? k : rowAdj[k];
+                    int v = rowDst[e];
+                    if (rowCost[e] == Integer.MAX_VALUE || settled[v]) {
+                        continue;
+                    }
+                    int newCost = dist[u] + rowCost[e];
+                    if (newCost < dist[v]) {
+                        if (queued[v]) {
+                            remove(v, dist[v] % buckets, head, next, prev, queued);
+                        } else {
+                            count++;
+                        }
+                        dist[v] = newCost;
+                        /* If direct path */
+                        pred[v] = (u == source) ? v : u;
+                        insert(v, newCost % buckets, head, next, prev, queued);
+                    }
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static void insert(int v, int b, int[] head, int[] next, int[] prev, boolean[] queued) {
+        next[v] = head[b];
+        prev[v] = NONE;
+        if (head[b] != NONE) {
+            prev[head[b]] = v;
+        }
+        head[b] = v;
+        queued[v] = true;
+    }
+
+    private static void remove(int v, int b, int[] head, int[] next, int[] prev, boolean[] queued) {
+        if (prev[v] != NONE) {
+            next[prev[v]] = next[v];
+        } else {
+            head[b] = next[v];
+        }
+        if (next[v] != NONE) {
+            prev[next[v]] = prev[v];
+        }
+        queued[v] = false;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import peersim.config.Configuration;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Network;
+import peersim.core.Node;
+
+/**
+ * The control saves the converged routing state to a file, or restores it at startup.
+ *
+ * Saving writes the random seed, the CostInitialiser cost store and the cost, predecessor and next hop
+ * of every node's table, through a memory-mapped file. Typically run with FINAL, or at the cycle the
+ * network converges. Restoring, as an initialiser declared after CostInitialiser, maps the file and
+ * checks that the seed and the cost store match the current run. If they match, every saved table is
+ * handed to its DistanceVectorProtocol, which skips the INITIALISE, BROADCAST and COMPUTE phases.
+ * Otherwise the run starts from scratch.
+ *
+ * The file is big-endian: int magic, int version, long seed, int size, int links, int rows,
+ * then size+1 row offsets, links neighbour IDs and links costs of the cost store, then per row
+ * the node ID and size costs, size predecessors and size next hops. Only vector mode keeps next hops in
+ * its tables, in the other modes they are derived from the predecessors when saving. The host and unreachable
+ * destinations are their own next hop, as in a new DistanceVector.
+ *
+ * Parameters: "protocol" the DistanceVectorProtocol, "file" the checkpoint file,
+ * "restore" flag to restore instead of save.
+ */
+public class Checkpoint implements Control {
+
+    private static final String PAR_PROT = "protocol";
+    private static final String PAR_FILEPATH = "file";
+    private static final String PAR_RESTORE = "restore";
+    /* "DVCP" */
+    private static final int MAGIC = 0x44564350;
+    private static final int VERSION = 1;
+    /* Bytes before the cost store */
+    private static final int HEADER = 28;
+    /* Largest file region mapped at once */
+    private static final long REGION = 1L << 30;
+
+    private final int pid;                  //DistanceVectorProtocol protocol ID
+    private final Path file;                //checkpoint file
+    private final boolean restore;          //restore instead of save
+
+    /**
+     * A constructor
+     *
+     * @param prefix a string provided by PeerSim and used to access parameters from the configuration file.
+     */
+    public Checkpoint(String prefix) {
+        this.pid = Configuration.getPid(prefix + "." + PAR_PROT);
+        this.file = Paths.get(Configuration.getString(prefix + "." + PAR_FILEPATH));
+        this.restore = Configuration.contains(prefix + "." + PAR_RESTORE);
+    }
+
+    /**
+     * Implementation of the common method.
+     */
+    @Override
+    public boolean execute() {
+        try {
+            if (restore) {
+                load();
+            } else {
+                save();
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return false;
+    }
+
+    /**
+     * Writes the cost store and the tables of all nodes that are up.
+     */
+    private void save() throws IOException {
+        CostStore store = CostInitialiser.getStore();
+        int size = Network.size();
+        DistanceVector[] tables = new DistanceVector[size];
+        DistanceVectorProtocol[] protocols = new DistanceVectorProtocol[size];
+        int rows = 0;
+        for (int i = 0; i < size; i++) {
+            Node node = Network.get(i);
+            DistanceVectorProtocol protocol = (DistanceVectorProtocol) node.getProtocol(pid);
+            DistanceVector table = protocol.getTable();
+            if (node.isUp() && table != null && table.size() == size) {
+                protocols[rows] = protocol;
+                tables[rows++] = table;
+            }
+        }
+        int[] hop = new int[size];
+        long head = head(size, store.links());
+        long rowBytes = rowBytes(size);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            FileChannel channel = raf.getChannel();
+            raf.setLength(head + rows * rowBytes);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, head);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(CommonState.r.getLastSeed())
+                    .putInt(size).putInt(store.links()).putInt(rows);
+            IntBuffer ints = buffer.asIntBuffer();
+            for (int i = 0; i < size; i++) {
+                ints.put(store.start(i));
+            }
+            ints.put(store.links());
+            for (int k = 0; k < store.links(); k++) {
+                ints.put(store.neighbour(k));
+            }
+            for (int k = 0; k < store.links(); k++) {
+                ints.put(store.cost(k));
+            }
+            int perRegion = (int) Math.max(1, REGION / rowBytes);
+            for (int r = 0; r < rows; r += perRegion) {
+                int count = Math.min(perRegion, rows - r);
+                ints = channel.map(FileChannel.MapMode.READ_WRITE, head + r * rowBytes, count * rowBytes).asIntBuffer();
+                for (int k = r; k < r + count; k++) {
+                    int[] next = protocols[k].getNextHops();
+                    for (int d = 0; d < size; d++) {
+                        hop[d] = next[d] < 0 ? d : next[d];
+                    }
+                    ints.put(tables[k].owner).put(tables[k].cost).put(tables[k].via).put(hop);
+                }
+            }
+        }
+        System.out.println("Checkpoint: saved " + rows + " tables to " + file);
+    }
+
+    /**
+     * Restores the saved tables if the file matches the current seed and cost store.
+     */
+    private void load() throws IOException {
+        if (!Files.exists(file)) {
+            System.out.println("Checkpoint: no " + file + ", starting from scratch");
+            return;
+        }
+        CostStore store = CostInitialiser.getStore();
+        int size = Network.size();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER, channel.size()));
+            if (buffer.remaining() < HEADER || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                System.out.println("Checkpoint: " + file + " is not a checkpoint, starting from scratch");
+                return;
+            }
+            long seed = buffer.getLong();
+            int savedSize = buffer.getInt(), links = buffer.getInt(), rows = buffer.getInt();
+            long head = head(size, links);
+            long rowBytes = rowBytes(size);
+            if (seed != CommonState.r.getLastSeed() || savedSize != size || links != store.links()
+                    || rows < 0 || rows > size || channel.size() != head + rows * rowBytes
+                    || !sameStore(channel.map(FileChannel.MapMode.READ_ONLY, HEADER, head - HEADER).asIntBuffer(), store)) {
+                System.out.println("Checkpoint: " + file + " is for another seed or topology, starting from scratch");
+                return;
+            }
+            int perRegion = (int) Math.max(1, REGION / rowBytes);
+            for (int r = 0; r < rows; r += perRegion) {
+                int count = Math.min(perRegion, rows - r);
+                IntBuffer ints = channel.map(FileChannel.MapMode.READ_ONLY, head + r * rowBytes, count * rowBytes).asIntBuffer();
+                for (int k = 0; k < count; k++) {
+                    int id = ints.get();
+                    if (id < 0 || id >= size) {
+                        throw new IOException("Bad node ID " + id + " in " + file);
+                    }
+                    DistanceVector table = new DistanceVector(id, size);
+                    ints.get(table.cost).get(table.via).get(table.hop);
+                    table.clearChanges();
+                    Node node = Network.get(id);
+                    ((DistanceVectorProtocol) node.getProtocol(pid)).restore(node, pid, table);
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                ((DistanceVectorProtocol) Network.get(i).getProtocol(pid)).resume(pid);
+            }
+            System.out.println("Checkpoint: restored " + rows + " tables from " + file);
+        }
+    }
+
+    /**
+     * Compares the saved cost store with the current one.
+     */
+    private static boolean sameStore(IntBuffer ints, CostStore store) {
+        for (int i = 0; i < store.size(); i++) {
+            if (ints.get() != store.start(i)) {
+                return false;
+            }
+        }
+        if (ints.get() != store.links()) {
+            return false;
+        }
+        for (int k = 0; k < store.links(); k++) {
+            if (ints.get() != store.neighbour(k)) {
+                return false;
+            }
+        }
+        for (int k = 0; k < store.links(); k++) {
+            if (ints.get() != store.cost(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return bytes before the first row
+     */
+    private static long head(int size, int links) {
+        return HEADER + 4L * (size + 1) + 8L * links;
+    }
+
+    /**
+     * @return bytes per row
+     */
+    private static long rowBytes(int size) {
+        return 4L + 12L * size;
+    }
+}
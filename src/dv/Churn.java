@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Fallible;
+import peersim.core.Network;
+import peersim.core.Node;
+import peersim.core.Scheduler;
+
+/**
+ * The control changes the network while the simulation runs. Every time it is executed it
+ * gives new random costs to some links, removes some links for good, fails some nodes and
+ * brings some failed nodes back. Rates are expected events per execution; the fractional part
+ * is the probability of one more event. The schedule is set with the usual from, until and step.
+ *
+ * Costs are changed in the global CostStore and both ends of a changed link are told through
+ * DistanceVectorProtocol, which reconverges from there. A failed node has all its links down.
+ * A node that comes back up gets new random costs on its links, except removed links and
+ * links to nodes that are still down, and starts the protocol again.
+ *
+ * Parameters: "protocol" the DistanceVectorProtocol, "change", "remove", "fail" and "join" the rates
+ * (default 0), "maxcost" largest random cost (default 20). While a Churn still has executions ahead,
+ * MetricsObserver does not end the simulation.
+ * PREREQUISITE, must be declared after CostInitialiser in PeerSim.
+ */
+public class Churn implements Control {
+
+    private static final String PAR_PROT = "protocol";
+    private static final String PAR_CHANGE = "change";
+    private static final String PAR_REMOVE = "remove";
+    private static final String PAR_FAIL = "fail";
+    private static final String PAR_JOIN = "join";
+    private static final String PAR_MAXCOST = "maxcost";
+    /* Random picks tried before an event is given up */
+    private static final int ATTEMPTS = 32;
+    /* Churns with a non-zero rate by prefix, replaced when the next experiment creates them again */
+    private static final Map<String, Churn> registered = new HashMap<>();
+
+    private final int pid;                  //DistanceVectorProtocol protocol ID
+    private final double change;            //cost changes per execution
+    private final double remove;            //link removals per execution
+    private final double fail;              //node failures per execution
+    private final double join;              //node recoveries per execution
+    private final int maxCost;              //largest random cost
+    private final EdgeSet removed;          //removed links, lower ID first
+    private final Scheduler schedule;       //when the control runs
+    private long ran = -1;                  //time of the last execution, -1 before the first
+
+    /**
+     * A constructor
+     *
+     * @param prefix a string provided by PeerSim and used to access parameters from the configuration file.
+     */
+    public Churn(String prefix) {
+        this.pid = Configuration.getPid(prefix + "." + PAR_PROT);
+        this.change = rate(prefix + "." + PAR_CHANGE);
+        this.remove = rate(prefix + "." + PAR_REMOVE);
+        this.fail = rate(prefix + "." + PAR_FAIL);
+        this.join = rate(prefix + "." + PAR_JOIN);
+        this.maxCost = Configuration.getInt(prefix + "." + PAR_MAXCOST, 20);
+        if (maxCost < 1) {
+            throw new IllegalParameterException(prefix + "." + PAR_MAXCOST, "Must be positive");
+        }
+        this.removed = new EdgeSet(16);
+        this.schedule = new Scheduler(prefix);
+        if (change + remove + fail + join > 0) {
+            registered.put(prefix, this);
+        } else {
+            registered.remove(prefix);
+        }
+    }
+
+    private static double rate(String name) {
+        double rate = Configuration.getDouble(name, 0);
+        if (rate < 0) {
+            throw new IllegalParameterException(name, "Must not be negative");
+        }
+        return rate;
+    }
+
+    /**
+     * Implementation of the common method. This method is called in each cycle.
+     */
+    @Override
+    public boolean execute() {
+        ran = CommonState.getTime();
+        CostStore store = CostInitialiser.getStore();
+        for (int n = events(change); n > 0; n--) {
+            int k = pickLink(store);
+            if (k >= 0) {
+                setCost(store, owner(store, k), store.neighbour(k), CommonState.r.nextInt(maxCost) + 1);
+            }
+        }
+        for (int n = events(remove); n > 0; n--) {
+            int k = pickLink(store);
+            if (k >= 0) {
+                int i = owner(store, k), j = store.neighbour(k);
+                removed.add(Math.min(i, j), Math.max(i, j));
+                setCost(store, i, j, CostStore.NO_LINK);
+            }
+        }
+        for (int n = events(fail); n > 0; n--) {
+            Node node = pickNode(true);
+            if (node != null) {
+                failNode(store, node);
+            }
+        }
+        for (int n = events(join); n > 0; n--) {
+            Node node = pickNode(false);
+            if (node != null) {
+                joinNode(store, node);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the Churns of the previous experiment. Called by Sweep before a run in a reused class loader.
+     */
+    static void reset() {
+        registered.clear();
+    }
+
+    /**
+     * Tells whether some Churn still has executions ahead, counting one due at the current time
+     * that has not run yet.
+     *
+     * @return true if the network may still change
+     */
+    static boolean pending() {
+        long now = CommonState.getTime();
+        for (Churn churn : registered.values()) {
+            Scheduler at = churn.schedule;
+            long next = Math.max(now, churn.ran + 1);
+            /* First scheduled time at or after next */
+            next = next <= at.from ? at.from : at.from + (next - at.from + at.step - 1) / at.step * at.step;
+            if (next < at.until && next < CommonState.getEndTime()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Draws the number of events for a rate.
+     */
+    private static int events(double rate) {
+        int n = (int) rate;
+        return CommonState.r.nextDouble() < rate - n ? n + 1 : n;
+    }
+
+    /**
+     * Picks a random link that is up between two nodes that are up.
+     *
+     * @return the link's position in the store, or -1 if none was found
+     */
+    private int pickLink(CostStore store) {
+        for (int a = 0; a < ATTEMPTS; a++) {
+            int i = CommonState.r.nextInt(store.size());
+            if (store.degree(i) == 0 || !Network.get(i).isUp()) {
+                continue;
+            }
+            int k = store.start(i) + CommonState.r.nextInt(store.degree(i));
+            if (store.cost(k) != CostStore.NO_LINK && Network.get(store.neighbour(k)).isUp()) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Picks a random node that is up, or a random node that is down.
+     */
+    private static Node pickNode(boolean up) {
+        int candidates = 0;
+        for (int i = 0; i < Network.size(); i++) {
+            if (Network.get(i).isUp() == up) {
+                candidates++;
+            }
+        }
+        if (candidates == 0) {
+            return null;
+        }
+        int pick = CommonState.r.nextInt(candidates);
+        for (int i = 0; i < Network.size(); i++) {
+            if (Network.get(i).isUp() == up && pick-- == 0) {
+                return Network.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the node whose row holds a position of the store.
+     */
+    private static int owner(CostStore store, int k) {
+        int lo = 0, hi = store.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (store.start(mid) <= k) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Takes a node down with all its links.
+     */
+    private void failNode(CostStore store, Node node) {
+        int i = (int) node.getID();
+        node.setFailState(Fallible.DOWN);
+        for (int k = store.start(i); k < store.end(i); k++) {
+            if (store.cost(k) != CostStore.NO_LINK) {
+                setCost(store, i, store.neighbour(k), CostStore.NO_LINK);
+            }
+        }
+    }
+
+    /**
+     * Brings a node back up with new costs on its links, and restarts its protocol.
+     */
+    private void joinNode(CostStore store, Node node) {
+        int i = (int) node.getID();
+        node.setFailState(Fallible.OK);
+        for (int k = store.start(i); k < store.end(i); k++) {
+            int j = store.neighbour(k);
+            if (Network.get(j).isUp() && !removed.contains(Math.min(i, j), Math.max(i, j))) {
+                setCost(store, i, j, CommonState.r.nextInt(maxCost) + 1);
+            }
+        }
+        ((DistanceVectorProtocol) node.getProtocol(pid)).join(node, pid);
+    }
+
+    /**
+     * Changes the cost of a link and tells both ends.
+     */
+    private void setCost(CostStore store, int i, int j, int c) {
+        int old = store.getCost(i, j);
+        if (old == c) {
+            return;
+        }
+        store.setCost(i, j, c);
+        ((DistanceVectorProtocol) Network.get(i).getProtocol(pid)).linkChanged(j, old, c);
+        ((DistanceVectorProtocol) Network.get(j).getProtocol(pid)).linkChanged(i, old, c);
+    }
+}
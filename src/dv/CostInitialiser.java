@@ -20,7 +20,7 @@ import peersim.core.Node;
 /**
  * The class generates random cost values for each edge in a network.
  * The initialiser access Linkable protocol to define edges.
- * The initialiser generates a public static global matrix for all edges and costs.  
+ * The initialiser generates a public static global sparse store for all edges and costs.  
  * PREREQUISITE, must be declared after whirring component in PeerSim.
  * @author M. Ayiad
  * @version 1.0 
@@ -30,7 +30,7 @@ public class CostInitialiser implements peersim.core.Control {
 
 	private int pid;														//linkable protocol ID 
 	private int size;														//network size
-	private static int[][] initCcost;										//global costs matrix	
+	private static CostStore initCcost;										//global costs store	
 	
 	private boolean debug;													//for debugging
 	private static final int MAX_COST=20; 									//Maximum cost
@@ -50,27 +50,24 @@ public class CostInitialiser implements peersim.core.Control {
 	@Override
 	public boolean execute() {
 		size = Network.size();
-		initCcost = new int[size][size];
-		for(int i=0; i < size; i++)
-			for(int j=0; j < size; j++)
-				if(i==j)
-					initCcost[i][j]=0;
-				else
-					initCcost[i][j] = Integer.MAX_VALUE;			
-		
-		for(int i=0; i < size; i++) {
+		int m = 0;
+		for(int i=0; i < size; i++)												//count links
+			m += ((Linkable) Network.get(i).getProtocol(pid)).degree();
+		int[] src = new int[m], dst = new int[m];
+		m = 0;
+		for(int i=0; i < size; i++) {											//collect links
 			Node node = Network.get(i);
 			Linkable lnk = (Linkable) node.getProtocol(pid);
-			
-			for(int j=0; j < lnk.degree(); j++) {
-				Node peer = lnk.getNeighbor(j);
-				
-				if(initCcost[(int)node.getID()][(int)peer.getID()] == Integer.MAX_VALUE) {					
-					initCcost[(int)node.getID()][(int)peer.getID()] = CommonState.r.nextInt(MAX_COST)+1;;
-					initCcost[(int)peer.getID()][(int)node.getID()] = initCcost[(int)node.getID()][(int)peer.getID()];	
-				}
+			for(int j=0; j < lnk.degree(); j++, m++) {
+				src[m] = (int)node.getID();
+				dst[m] = (int)lnk.getNeighbor(j).getID();
 			}
 		}
+		initCcost = CostStore.build(size, src, dst, m);
+		
+		for(int e=0; e < m; e++)												//assign costs in link order
+			if(initCcost.getCost(src[e], dst[e]) == Integer.MAX_VALUE)
+				initCcost.setCost(src[e], dst[e], CommonState.r.nextInt(MAX_COST)+1);
 		if(debug) {
 			System.out.printf("\n      ");				
 			for(int j=0; j < size; j++) 
@@ -78,10 +75,10 @@ public class CostInitialiser implements peersim.core.Control {
 			for(int i=0; i < size; i++) {
 				System.out.printf("\n(%3d) ", i);				
 				for(int j=0; j < size; j++) 
-					if(initCcost[i][j]==Integer.MAX_VALUE)
+					if(initCcost.getCost(i, j)==Integer.MAX_VALUE)
 						System.out.printf("    X ");
 					else
-						System.out.printf("%5d ", initCcost[i][j]);
+						System.out.printf("%5d ", initCcost.getCost(i, j));
 				System.out.println();
 			}
 		}
@@ -94,6 +91,22 @@ public class CostInitialiser implements peersim.core.Control {
 	 * @return cost of edge between node i and node j
 	 */
 	public static int getCost(long i, long j) {
-		return initCcost[(int)i][(int)j];
+		return initCcost.getCost((int)i, (int)j);
+	}
+	
+	/**
+	 * Global access to the cost store, for bulk iteration over a node's neighbours
+	 * @return the cost store
+	 */
+	public static CostStore getStore() {
+		return initCcost;
+	}
+
+	/**
+	 * Replaces the global cost store, for initialisers that read costs from elsewhere
+	 * @param store the new cost store
+	 */
+	static void setStore(CostStore store) {
+		initCcost = store;
 	}
 }
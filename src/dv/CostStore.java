@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Arrays;
+
+/**
+ * The class stores link costs in compressed sparse rows: for every node a sorted array of
+ * neighbour IDs and a parallel array of costs. Memory grows with the number of links rather than
+ * with the square of the network size.
+ *
+ * Rows are symmetric: a link declared in one direction is present in both rows.
+ * A link that exists in the structure but has no cost assigned yet costs Integer.MAX_VALUE,
+ * the same as a missing link.
+ */
+public class CostStore {
+
+    /* Cost of a missing link */
+    public static final int NO_LINK = Integer.MAX_VALUE;
+
+    private final int size;             //number of nodes
+    private final int[] offset;         //start of each node's row, size+1 entries
+    private final int[] neighbour;      //neighbour IDs, sorted within each row
+    private final int[] cost;           //link cost per neighbour
+
+    /**
+     * A constructor.
+     *
+     * @param size number of nodes.
+     * @param offset start of each row, size+1 entries.
+     * @param neighbour neighbour IDs, sorted within each row.
+     */
+    private CostStore(int size, int[] offset, int[] neighbour) {
+        this.size = size;
+        this.offset = offset;
+        this.neighbour = neighbour;
+        this.cost = new int[neighbour.length];
+        Arrays.fill(cost, NO_LINK);
+    }
+
+    /**
+     * Builds the row structure from a list of directed links. Duplicates and self-links are dropped.
+     *
+     * @param size number of nodes.
+     * @param src link source node IDs.
+     * @param dst link destination node IDs.
+     * @param m number of links in the arrays.
+     * @return a store with every link present and no costs assigned
+     */
+    public static CostStore build(int size, int[] src, int[] dst, int m) {
+        /* Count both directions per row */
+        int[] offset = new int[size + 1];
+        for (int e = 0; e < m; e++) {
+            if (src[e] == dst[e]) continue;
+            offset[src[e] + 1]++;
+            offset[dst[e] + 1]++;
+        }
+        for (int i = 0; i < size; i++) {
+            offset[i + 1] += offset[i];
+        }
+        /* Fill rows */
+        int[] fill = Arrays.copyOf(offset, size);
+        int[] neighbour = new int[offset[size]];
+        for (int e = 0; e < m; e++) {
+            if (src[e] == dst[e]) continue;
+            neighbour[fill[src[e]]++] = dst[e];
+            neighbour[fill[dst[e]]++] = src[e];
+        }
+        /* Sort rows and drop duplicates in place */
+        int write = 0;
+        int start = 0;
+        for (int i = 0; i < size; i++) {
+            int end = offset[i + 1];
+            Arrays.sort(neighbour, start, end);
+            offset[i] = write;
+            for (int k = start; k < end; k++) {
+                if (k == start || neighbour[k] != neighbour[k - 1]) {
+                    neighbour[write++] = neighbour[k];
+                }
+            }
+            start = end;
+        }
+        offset[size] = write;
+        return new CostStore(size, offset, Arrays.copyOf(neighbour, write));
+    }
+
+    /**
+     * Copies the store. The copy shares the row structure, which never changes, and has its own costs.
+     *
+     * @return the copy
+     */
+    public CostStore copy() {
+        CostStore copy = new CostStore(size, offset, neighbour);
+        System.arraycopy(cost, 0, copy.cost, 0, cost.length);
+        return copy;
+    }
+
+    /**
+     * @return number of nodes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of directed links, twice the number of undirected links
+     */
+    public int links() {
+        return neighbour.length;
+    }
+
+    /**
+     * Cost of the link between two nodes.
+     *
+     * @param i node i.
+     * @param j node j.
+     * @return 0 if i equals j, the link cost, or NO_LINK if they are not linked
+     */
+    public int getCost(int i, int j) {
+        if (i == j) {
+            return 0;
+        }
+        int k = index(i, j);
+        return k < 0 ? NO_LINK : cost[k];
+    }
+
+    /**
+     * Sets the cost of a link in both directions.
+     *
+     * @param i node i.
+     * @param j node j.
+     * @param c new cost, NO_LINK to mark the link as down.
+     * @return false if the nodes are not linked in the structure
+     */
+    public boolean setCost(int i, int j, int c) {
+        int ij = index(i, j);
+        int ji = index(j, i);
+        if (ij < 0 || ji < 0) {
+            return false;
+        }
+        cost[ij] = c;
+        cost[ji] = c;
+        return true;
+    }
+
+    /**
+     * Position of a link in the flat arrays.
+     *
+     * @param i node i.
+     * @param j node j.
+     * @return the position, or -1 if the nodes are not linked
+     */
+    public int index(int i, int j) {
+        if (i < 0 || i >= size) {
+            return -1;
+        }
+        int k = Arrays.binarySearch(neighbour, offset[i], offset[i + 1], j);
+        return k < 0 ? -1 : k;
+    }
+
+    /**
+     * @param i node i.
+     * @return number of neighbours of node i
+     */
+    public int degree(int i) {
+        return offset[i + 1] - offset[i];
+    }
+
+    /**
+     * Start of a node's row, for bulk iteration together with {@link #end(int)}.
+     *
+     * @param i node i.
+     * @return position of the first neighbour of node i
+     */
+    public int start(int i) {
+        return offset[i];
+    }
+
+    /**
+     * @param i node i.
+     * @return position after the last neighbour of node i
+     */
+    public int end(int i) {
+        return offset[i + 1];
+    }
+
+    /**
+     * @param k position in the flat arrays.
+     * @return neighbour ID at that position
+     */
+    public int neighbour(int k) {
+        return neighbour[k];
+    }
+
+    /**
+     * @param k position in the flat arrays.
+     * @return link cost at that position
+     */
+    public int cost(int k) {
+        return cost[k];
+    }
+
+    /**
+     * Sets the cost of one direction of a link.
+     *
+     * @param k position in the flat arrays.
+     * @param c new cost.
+     */
+    public void setCost(int k, int c) {
+        cost[k] = c;
+    }
+}
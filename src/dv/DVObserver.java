@@ -1,18 +1,28 @@
 /*
- * Copyright (c) 2018, 
+ * Copyright (c) 2018,
  *     University of Reading, Computer science Department
  *     CS2CA17 module - lab sessions
  * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
  * Lesser General Public License version 2 as published by the Free Software Foundation.
  *
- * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
- * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
  * See the GNU Lesser General Public License for more details.
  */
 package dv;
 
-import java.util.TreeMap;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.CommonState;
 import peersim.core.Control;
 import peersim.core.Network;
 import peersim.core.Node;
@@ -20,6 +30,14 @@ import peersim.core.Node;
 /**
  * The class observes DistanceVectorProtocol protocol and provide readable printout.
  * The observer prints to output screen the shortest path tree form each source node and in each cycle.
+ * Output goes through one large buffer that is flushed once per cycle.
+ *
+ * Optional parameters: "step" print every step-th cycle only, "nodes" comma separated node IDs or
+ * ranges (e.g. 0-9,42) to print, "changed" print only the nodes whose table changed in the previous cycle,
+ * "summary" print the number of table entries changed in the previous cycle after the tables,
+ * "outf" write to a file instead of the screen, "format" text (default) or binary.
+ * The binary format needs "outf" and appends one big-endian record per printed cycle: long cycle,
+ * int rows, int size, then the rows' node IDs, then rows*size costs, then rows*size predecessors.
  * PREREQUISITE, must be used for DistanceVectorProtocol protocol in PeerSim.
  * @author M. Ayiad
  * @version 1.0 
@@ -27,40 +45,209 @@ import peersim.core.Node;
  */
 public class DVObserver implements Control{
 
+	private static final String PAR_PROT = "protocol";
+	private static final String PAR_STEP = "step";
+	private static final String PAR_NODES = "nodes";
+	private static final String PAR_CHANGED = "changed";
+	private static final String PAR_SUMMARY = "summary";
+	private static final String PAR_FILEPATH = "outf";
+	private static final String PAR_FORMAT = "format";
+	private static final int BUFFER = 1 << 20;							//output buffer size in bytes
+
 	private final int pid;											//DistanceVectorProtocol protocol ID
+	private final int step;											//print every step-th cycle
+	private final int[] nodes;										//node IDs to print, null for all
+	private final boolean changedOnly;								//print changed tables only
+	private final boolean summary;									//print the number of changed entries
+	private final Writer text;										//text output, null in binary format
+	private final FileChannel channel;								//binary output, null in text format
+	private ByteBuffer buffer;										//binary output buffer
 	/**
 	 * A constructor
 	 * @param prefix a string provided by PeerSim and used to access parameters from the configuration file.
 	 */
 	public DVObserver(String prefix) {
-		this.pid  = Configuration.getPid(prefix + ".protocol");
+		this.pid  = Configuration.getPid(prefix + "." + PAR_PROT);
+		this.step = Configuration.getInt(prefix + "." + PAR_STEP, 1);
+		if(step < 1) throw new IllegalParameterException(prefix + "." + PAR_STEP, "Must be positive");
+		String list = Configuration.getString(prefix + "." + PAR_NODES, null);
+		this.nodes = list == null ? null : parseNodes(prefix + "." + PAR_NODES, list);
+		this.changedOnly = Configuration.contains(prefix + "." + PAR_CHANGED);
+		this.summary = Configuration.contains(prefix + "." + PAR_SUMMARY);
+		String outf = Configuration.getString(prefix + "." + PAR_FILEPATH, null);
+		String format = Configuration.getString(prefix + "." + PAR_FORMAT, "text");
+		try {
+			if(format.equals("text")) {
+				this.text = new BufferedWriter(new OutputStreamWriter(
+						outf == null ? System.out : new FileOutputStream(outf), StandardCharsets.US_ASCII), BUFFER);
+				this.channel = null;
+			} else if(format.equals("binary")) {
+				if(outf == null) throw new IllegalParameterException(prefix + "." + PAR_FILEPATH, "Required by binary format");
+				this.text = null;
+				this.channel = new FileOutputStream(outf).getChannel();
+				this.buffer = ByteBuffer.allocateDirect(BUFFER);
+			} else {
+				throw new IllegalParameterException(prefix + "." + PAR_FORMAT, "Unknown format " + format);
+			}
+		} catch (IOException e) {
+			throw new IllegalParameterException(prefix + "." + PAR_FILEPATH, e.getMessage());
+		}
 	}
-	
+
+	/**
+	 * Parses a list of node IDs and ID ranges.
+	 * @param name parameter name, for error messages.
+	 * @param list comma separated IDs or first-last ranges.
+	 * @return sorted distinct node IDs
+	 */
+	private static int[] parseNodes(String name, String list) {
+		int[] ids = new int[8];
+		int count = 0;
+		try {
+			for(String item : list.split(",")) {
+				item = item.trim();
+				if(item.isEmpty()) continue;
+				int dash = item.indexOf('-', 1);
+				int first = Integer.parseInt(dash < 0 ? item : item.substring(0, dash).trim());
+				int last = dash < 0 ? first : Integer.parseInt(item.substring(dash + 1).trim());
+				if(first < 0 || last < first) throw new IllegalParameterException(name, "Bad range " + item);
+				for(int id = first; id <= last; id++) {
+					if(count == ids.length) ids = Arrays.copyOf(ids, count << 1);
+					ids[count++] = id;
+				}
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalParameterException(name, e.getMessage());
+		}
+		ids = Arrays.copyOf(ids, count);
+		Arrays.sort(ids);
+		int distinct = 0;
+		for(int i = 0; i < count; i++)
+			if(distinct == 0 || ids[i] != ids[distinct - 1]) ids[distinct++] = ids[i];
+		return Arrays.copyOf(ids, distinct);
+	}
+
 	/**
-	 * Implementation of the common method. This method is called in each cycle. 
+	 * Implementation of the common method. This method is called in each cycle.
 	 */
 	@Override
 	public boolean execute() {
-		for(int i=0; i < Network.size(); i++ ) {										//for each node in network
-			
-			Node node = Network.get(i);													//reference node i
-			DistanceVectorProtocol  protocol = (DistanceVectorProtocol) node.getProtocol(pid);	//get DV protocol
-			TreeMap<Long, Path> paths = protocol.getPaths();							//get path tree
-						
-			if(paths==null) continue;											
-																						//print tree
-			System.out.printf("ND#%3d->| ", Network.get(i).getID());
-			for(Path p : paths.values()) System.out.printf("%3d,", p.destination );
-			System.out.printf(" |%s\n    cost| ", "");
-			for(Path p : paths.values()) 
-				if(p.cost == Integer.MAX_VALUE)
-					System.out.printf(" X ," );
-				else
-					System.out.printf("%3d,", p.cost );
-			System.out.printf(" |\n     via| ");
-			for(Path p : paths.values()) System.out.printf("%3d,", p.predecessor );
-			System.out.printf(" |\n----------------------------------------------------------------------------\n");
-		}
+		boolean last = CommonState.getPhase() == CommonState.POST_SIMULATION;
+		if(CommonState.getTime() % step != 0 && !last) return false;			//not a sampled cycle
+		long cycle = CommonState.getTime() - 1;								//changes made in previous cycle
+		int rows = nodes == null ? Network.size() : nodes.length;
+		try {
+			if(text != null) {
+				for(int r = 0; r < rows; r++) {								//for each selected node
+					Node node = selected(r, cycle);								//reference node
+					if(node == null) continue;
+					DistanceVectorProtocol protocol = (DistanceVectorProtocol) node.getProtocol(pid);	//get DV protocol
+					DistanceVector table = protocol.getTable();				//get routing table
+					if(table == null && protocol.getPaths() == null) continue;
+					printTable(node.getID(), table);							//print tree
+				}
+				if(summary && cycle >= 0) {
+					int changed = 0;
+					for(int i=0; i < Network.size(); i++ )
+						changed += ((DistanceVectorProtocol) Network.get(i).getProtocol(pid)).getChanged(cycle);
+					text.write("changed entries in cycle " + cycle + ": " + changed + "\n");
+				}
+				text.flush();
+			} else {
+				dump(rows, cycle);
+			}
+		} catch (IOException ex) { ex.printStackTrace(); }
 		return false;
 	}
+
+	/**
+	 * Selects the r-th printed node.
+	 * @param r index in the selection.
+	 * @param cycle previous cycle.
+	 * @return the node, or null if it is not printed
+	 */
+	private Node selected(int r, long cycle) {
+		int i = nodes == null ? r : nodes[r];
+		if(i >= Network.size()) return null;										//node not in network
+		Node node = Network.get(i);
+		if(changedOnly && ((DistanceVectorProtocol) node.getProtocol(pid)).getChanged(cycle) == 0)
+			return null;																//table unchanged
+		return node;
+	}
+
+	/**
+	 * Prints one node's table as text.
+	 * @param nodeId the node's ID.
+	 * @param table the node's table, null if not computed yet.
+	 */
+	private void printTable(long nodeId, DistanceVector table) throws IOException {
+		int size = table == null ? 0 : table.size();
+		StringBuilder line = new StringBuilder(16 * size + 256);
+		line.append("ND#");
+		pad(line, nodeId);
+		line.append("->| ");
+		for(int d = 0; d < size; d++) { pad(line, d); line.append(','); }
+		line.append(" |\n    cost| ");
+		for(int d = 0; d < size; d++) {
+			if(table.cost[d] == Integer.MAX_VALUE)
+				line.append(" X ,");
+			else { pad(line, table.cost[d]); line.append(','); }
+		}
+		line.append(" |\n     via| ");
+		for(int d = 0; d < size; d++) { pad(line, table.via[d]); line.append(','); }
+		line.append(" |\n----------------------------------------------------------------------------\n");
+		text.append(line);
+	}
+
+	/**
+	 * Appends a number right-aligned in three characters, as printf("%3d").
+	 */
+	private static void pad(StringBuilder line, long value) {
+		if(value >= 0 && value < 10) line.append("  ");
+		else if(value > -10 && value < 100) line.append(' ');
+		line.append(value);
+	}
+
+	/**
+	 * Appends the selected tables to the binary dump.
+	 * @param rows number of selected nodes.
+	 * @param cycle previous cycle.
+	 */
+	private void dump(int rows, long cycle) throws IOException {
+		int size = Network.size();
+		DistanceVector[] tables = new DistanceVector[rows];
+		int count = 0;
+		for(int r = 0; r < rows; r++) {
+			Node node = selected(r, cycle);
+			if(node == null) continue;
+			DistanceVector table = ((DistanceVectorProtocol) node.getProtocol(pid)).getTable();
+			if(table != null && table.size() == size) tables[count++] = table;
+		}
+		ensure(16);
+		buffer.putLong(CommonState.getTime()).putInt(count).putInt(size);
+		for(int r = 0; r < count; r++) { ensure(4); buffer.putInt(tables[r].owner); }
+		for(int r = 0; r < count; r++) putAll(tables[r].cost);
+		for(int r = 0; r < count; r++) putAll(tables[r].via);
+		drain();
+	}
+
+	private void putAll(int[] values) throws IOException {
+		for(int k = 0; k < values.length; ) {
+			ensure(4);
+			int n = Math.min(values.length - k, buffer.remaining() >> 2);
+			buffer.asIntBuffer().put(values, k, n);
+			buffer.position(buffer.position() + (n << 2));
+			k += n;
+		}
+	}
+
+	private void ensure(int bytes) throws IOException {
+		if(buffer.remaining() < bytes) drain();
+	}
+
+	private void drain() throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()) channel.write(buffer);
+		buffer.clear();
+	}
 }
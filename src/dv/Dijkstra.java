@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Arrays;
+
+/**
+ * The class implements Dijkstra's algorithm with an indexed 4-ary heap of node IDs.
+ * Runs in O(E log V) and requires non-negative costs, which CostInitialiser guarantees.
+ */
+public final class Dijkstra implements PathEngine {
+
+    /* Children per heap node */
+    private static final int ARITY = 4;
+    /* Heap position of a node that was never queued */
+    private static final int UNSEEN = -1;
+    /* Heap position of a node whose distance is final */
+    private static final int SETTLED = -2;
+
+    @Override
+    public int shortestPaths(int source, int n, int[] src, int[] dst, int[] cost, int m,
+                             int first, int firstEnd, int[] dist, int[] pred) {
+        int[] offset = new int[n + 1];
+        int[] adj = adjacency(n, src, m, first, firstEnd, offset);
+        return search(source, n, offset, adj, dst, cost, dist, pred);
+    }
+
+    @Override
+    public int shortestPaths(int source, int n, int[] offset, int[] adj, int[] dst, int[] cost,
+                             Topology.Patch patch, int[] dist, int[] pred) {
+        return search(source, n, offset, adj, dst, cost, patch, dist, pred);
+    }
+
+    @Override
+    public int shortestPaths(int source, int n, EdgeList edges, int[] dist, int[] pred) {
+        int[] offset = edges.rowStarts(n);
+        return shortestPaths(source, n, offset, edges.rowEdges(), edges.destinations(), edges.costs(), null,
+                dist, pred);
+    }
+
+    /**
+     * Computes shortest paths from a single source over edges already grouped by source node,
+     * so that many sources can share one adjacency. Used by AllPairs and Topology.
+     *
+     * @param source source node ID.
+     * @param n number of nodes.
+     * @param offset row starts, n+1 entries.
+     * @param adj edge indexes grouped by source, or null for edges stored row by row.
+     * @param dst edge destination node IDs.
+     * @param cost edge costs.
+     * @param dist output distances, at least n long.
+     * @param pred output predecessors, at least n long.
+     * @return number of passes over the edges, always 1
+     */
+    static int search(int source, int n, int[] offset, int[] adj, int[] dst, int[] cost, int[] dist, int[] pred) {
+        return search(source, n, offset, adj, dst, cost, null, dist, pred);
+    }
+
+    /**
+     * Computes shortest paths from a single source over edges grouped by source node, with some rows
+     * replaced by those of a patch. See PathEngine.
+     *
+     * @return number of passes over the edges, always 1
+     */
+    static int search(int source, int n, int[] offset, int[] adj, int[] dst, int[] cost, Topology.Patch patch,
+                      int[] dist, int[] pred) {
+        /* Initialise distances */
+        Arrays.fill(dist, 0, n, Integer.MAX_VALUE);
+        for (int i = 0; i < n; i++) {
+            pred[i] = i;
+        }
+        dist[source] = 0;
+        /* Indexed heap */
+        int[] heap = new int[n];
+        int[] pos = new int[n];
+        Arrays.fill(pos, UNSEEN);
+        int size = 0;
+        heap[size] = source;
+        pos[source] = size++;
+        while (size > 0) {
+            /* Pop the closest node */
+            int u = heap[0];
+            pos[u] = SETTLED;
+            if (--size > 0) {
+                heap[0] = heap[size];
+                pos[heap[0]] = 0;
+                siftDown(heap, pos, dist, size, 0);
+            }
+            /* Relax its edges, from the patch if it replaces the row */
+            int[] rowAdj = adj, rowDst = dst, rowCost = cost;
+            int from = offset[u], to = offset[u + 1];
+            int r = patch == null ? -1 : patch.row(u);
+            if (r >= 0) {
+                rowAdj = null;
+                rowDst = patch.dst;
+                rowCost = patch.cost;
+                from = patch.offset[r];
+                to = patch.offset[r + 1];
+            }
+            for (int k = from; k < to; k++) {
+                int e = rowAdj == null ? k : rowAdj[k];
+                int v = rowDst[e];
+                if (rowCost[e] == Integer.MAX_VALUE || pos[v] == SETTLED) {
+                    continue;
+                }
+                int newCost = dist[u] + rowCost[e];
+                if (newCost < dist[v]) {
+                    dist[v] = newCost;
+                    /* If direct path */
+                    pred[v] = (u == source) ? v : u;
+                    if (pos[v] == UNSEEN) {
+                        heap[size] = v;
+                        pos[v] = size++;
+                    }
+                    siftUp(heap, pos, dist, pos[v]);
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Groups edge indexes by source node. Edges of the preferred range come first in their row,
+     * the rest keep their order.
+     *
+     * @param n number of nodes.
+     * @param src edge source node IDs.
+     * @param m number of edges.
+     * @param first start of the preferred range.
+     * @param firstEnd end of the preferred range.
+     * @param offset output row starts, n+1 entries.
+     * @return edge indexes grouped by source
+     */
+    static int[] adjacency(int n, int[] src, int m, int first, int firstEnd, int[] offset) {
+        for (int e = 0; e < m; e++) {
+            offset[src[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            offset[i + 1] += offset[i];
+        }
+        int[] fill = Arrays.copyOf(offset, n);
+        int[] adj = new int[m];
+        for (int e = first; e < firstEnd; e++) {
+            adj[fill[src[e]]++] = e;
+        }
+        for (int e = 0; e < m; e++) {
+            if (e < first || e >= firstEnd) {
+                adj[fill[src[e]]++] = e;
+            }
+        }
+        return adj;
+    }
+
+    private static void siftUp(int[] heap, int[] pos, int[] dist, int i) {
+        int node = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) / ARITY;
+            if (dist[heap[parent]] <= dist[node]) {
+                break;
+            }
+            heap[i] = heap[parent];
+            pos[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = node;
+        pos[node] = i;
+    }
+
+    private static void siftDown(int[] heap, int[] pos, int[] dist, int size, int i) {
+        int node = heap[i];
+        while (true) {
+            int child = i * ARITY + 1;
+            if (child >= size) {
+                break;
+            }
+            /* Find the closest child */
+            int best = child;
+            int end = Math.min(child + ARITY, size);
+            for (int c = child + 1; c < end; c++) {
+                if (dist[heap[c]] < dist[heap[best]]) {
+                    best = c;
+                }
+            }
+            if (dist[heap[best]] >= dist[node]) {
+                break;
+            }
+            heap[i] = heap[best];
+            pos[heap[i]] = i;
+            i = best;
+        }
+        heap[i] = node;
+        pos[node] = i;
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Arrays;
+
+/**
+ * The class represents the routing table of a single node: the cost of the best known path
+ * to every destination and the node it is reached through, indexed by destination node ID.
+ *
+ * The "via" entry follows the convention of the observer: the last node before the destination,
+ * or the destination itself when it is a direct neighbour of the owner. The "hop" entry is the
+ * neighbour the route leaves through, which is what split horizon and link changes need.
+ *
+ * Entries that changed since the last advertisement are tracked, so that only those
+ * are sent to neighbours as a triggered update.
+ */
+public class DistanceVector {
+
+    /* Cost of an unreachable destination */
+    public static final int INFINITY = Integer.MAX_VALUE;
+
+    /* Enumerated split horizon rules */
+    public enum Split {
+        /* Use every advertised route */
+        NONE,
+        /* Ignore a neighbour's routes that go back through the owner */
+        HORIZON,
+        /* Treat a neighbour's routes that go back through the owner as unreachable */
+        POISON
+    }
+
+    /**
+     * The class holds the rules applied to updates, shared by all tables of a protocol.
+     */
+    public static final class Policy {
+
+        /* Plain Bellman-Ford updates, no hold-down and no cost limit */
+        public static final Policy DEFAULT = new Policy(Split.NONE, 0, INFINITY);
+
+        public final Split split;           //split horizon rule
+        public final int holdDown;          //cycles a worsened route ignores offers not better than before
+        public final int limit;             //costs at or above are unreachable
+
+        /**
+         * A constructor.
+         *
+         * @param split split horizon rule.
+         * @param holdDown hold-down time in cycles, 0 to disable.
+         * @param limit smallest unreachable cost.
+         */
+        public Policy(Split split, int holdDown, int limit) {
+            this.split = split;
+            this.holdDown = holdDown;
+            this.limit = limit;
+        }
+
+        /**
+         * Adds a link cost to a path cost.
+         *
+         * @return the sum, or INFINITY if either is unreachable or the sum reaches the limit
+         */
+        int add(int pathCost, int linkCost) {
+            if (pathCost == INFINITY || linkCost == INFINITY || pathCost >= limit - linkCost) {
+                return INFINITY;
+            }
+            return pathCost + linkCost;
+        }
+    }
+
+    public final int owner;             //owner node ID
+    public final int[] cost;            //path cost per destination
+    public final int[] via;             //predecessor per destination
+    public final int[] hop;             //next hop per destination
+    private final boolean[] dirty;      //changed since last advertisement
+    private final int[] changes;        //changed destinations, in order of change
+    private int changeCount;            //number of changed destinations
+    private long[] holdUntil;           //end of hold-down per destination, 0 if not held, allocated on first use
+    private int[] heldCost;             //cost before the route worsened
+    private int[] held;                 //destinations in hold-down
+    private int heldCount;              //number of destinations in hold-down
+
+    /**
+     * A constructor. Every destination but the owner starts unreachable.
+     *
+     * @param owner owner node ID.
+     * @param size number of nodes in the network.
+     */
+    public DistanceVector(int owner, int size) {
+        this.owner = owner;
+        this.cost = new int[size];
+        this.via = new int[size];
+        this.hop = new int[size];
+        this.dirty = new boolean[size];
+        this.changes = new int[size];
+        reset();
+    }
+
+    /**
+     * Forgets all routes except the route to the owner itself, which is marked as changed.
+     */
+    public void reset() {
+        Arrays.fill(cost, INFINITY);
+        for (int i = 0; i < via.length; i++) {
+            via[i] = i;
+            hop[i] = i;
+        }
+        Arrays.fill(dirty, false);
+        changeCount = 0;
+        heldCount = 0;
+        if (holdUntil != null) {
+            Arrays.fill(holdUntil, 0);
+        }
+        cost[owner] = 0;
+        markChanged(owner);
+    }
+
+    /**
+     * @return number of destinations in the table
+     */
+    public int size() {
+        return cost.length;
+    }
+
+    /**
+     * Offers a direct link to a neighbour.
+     *
+     * @param neighbour neighbour node ID.
+     * @param linkCost cost of the link.
+     * @return true if the route to the neighbour improved
+     */
+    public boolean link(int neighbour, int linkCost) {
+        if (linkCost >= cost[neighbour]) {
+            return false;
+        }
+        set(neighbour, linkCost, neighbour, neighbour);
+        return true;
+    }
+
+    /**
+     * Bellman-Ford update with a neighbour's triggered update: D(d) = min(D(d), c(owner, from) + Dfrom(d)).
+     *
+     * @param linkCost cost of the link between the owner and the sender.
+     * @param update entries changed at the sender.
+     * @return number of destinations whose route improved
+     */
+    public int merge(int linkCost, VectorUpdate update) {
+        return merge(linkCost, update, Policy.DEFAULT, 0);
+    }
+
+    /**
+     * Distance-vector update with a neighbour's triggered update. A better offer replaces the route,
+     * and a route through the sender follows whatever the sender now offers, even if worse.
+     * When the sender reports a route that the owner can beat, the owner's route is marked
+     * for advertisement so that the sender learns the alternative.
+     *
+     * @param linkCost cost of the link between the owner and the sender.
+     * @param update entries changed at the sender.
+     * @param policy split horizon, hold-down and cost limit.
+     * @param now current cycle, for hold-down.
+     * @return number of destinations whose route changed
+     */
+    public int merge(int linkCost, VectorUpdate update, Policy policy, long now) {
+        int changed = 0;
+        int from = update.source;
+        for (int k = 0; k < update.size; k++) {
+            int d = update.destination[k];
+            /* Destinations beyond the table are not known yet */
+            if (d >= cost.length) {
+                continue;
+            }
+            /* The sender routes back through the owner */
+            boolean reverse = policy.split != Split.NONE && update.hop[k] == owner;
+            if (reverse && policy.split == Split.HORIZON) {
+                continue;
+            }
+            int offered = reverse ? INFINITY : policy.add(update.cost[k], linkCost);
+            /* A neighbour's direct link ends at the neighbour itself */
+            int newVia = offered == INFINITY ? d : (update.via[k] == d ? from : update.via[k]);
+            int newHop = offered == INFINITY ? d : from;
+            if (hop[d] == from && cost[d] != INFINITY) {
+                /* Current route goes through the sender, follow it */
+                if (offered == cost[d] && newVia == via[d]) {
+                    continue;
+                }
+                if (offered > cost[d]) {
+                    holdDown(d, policy, now);
+                }
+                set(d, offered, newVia, newHop);
+                changed++;
+            } else if (better(offered, from, d) && !held(d, offered, now)) {
+                set(d, offered, newVia, newHop);
+                changed++;
+            } else if (!reverse && cost[d] != INFINITY && policy.add(cost[d], linkCost) < update.cost[k]) {
+                /* The sender holds a route worse than the owner can offer, advertise it again */
+                markChanged(d);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Tells whether an offered route beats the current one. Equal costs go to the lower next hop,
+     * so that the final table does not depend on the order in which updates arrive.
+     */
+    private boolean better(int offered, int newHop, int d) {
+        return offered < cost[d] || (offered == cost[d] && offered != INFINITY && newHop < hop[d]);
+    }
+
+    /**
+     * Applies a change in the cost of a link to a neighbour to every route through it.
+     * Only those routes are touched.
+     *
+     * @param neighbour neighbour node ID.
+     * @param oldCost previous link cost, INFINITY if the link was down.
+     * @param newCost new link cost, INFINITY if the link is down.
+     * @param policy hold-down and cost limit.
+     * @param now current cycle, for hold-down.
+     * @return number of destinations whose route changed
+     */
+    public int relink(int neighbour, int oldCost, int newCost, Policy policy, long now) {
+        int changed = 0;
+        if (oldCost != INFINITY) {
+            for (int d = 0; d < cost.length; d++) {
+                if (hop[d] != neighbour || d == owner || cost[d] == INFINITY) {
+                    continue;
+                }
+                /* The neighbour's own cost is what the route cost without the link */
+                int offered = policy.add(cost[d] - oldCost, newCost);
+                if (offered == cost[d]) {
+                    continue;
+                }
+                if (offered > cost[d]) {
+                    holdDown(d, policy, now);
+                }
+                if (offered == INFINITY) {
+                    set(d, INFINITY, d, d);
+                } else {
+                    set(d, offered, via[d], neighbour);
+                }
+                changed++;
+            }
+        }
+        if (newCost != INFINITY && newCost < cost[neighbour]) {
+            set(neighbour, newCost, neighbour, neighbour);
+            changed++;
+        }
+        return changed;
+    }
+
+    /**
+     * Marks every reachable destination for advertisement, so that a neighbour that just
+     * came up learns the whole vector.
+     */
+    public void markAll() {
+        for (int d = 0; d < cost.length; d++) {
+            if (cost[d] != INFINITY) {
+                markChanged(d);
+            }
+        }
+    }
+
+    /**
+     * Ends the hold-down of destinations whose time is up, and marks them for advertisement
+     * again so that neighbours offer their alternatives.
+     *
+     * @param now current cycle.
+     */
+    public void expire(long now) {
+        int kept = 0;
+        for (int i = 0; i < heldCount; i++) {
+            int d = held[i];
+            if (holdUntil[d] > now) {
+                held[kept++] = d;
+                continue;
+            }
+            holdUntil[d] = 0;
+            markChanged(d);
+        }
+        heldCount = kept;
+    }
+
+    /**
+     * @return true if some destination is in hold-down
+     */
+    public boolean holding() {
+        return heldCount > 0;
+    }
+
+    /**
+     * Forgets the entries waiting for advertisement, for a table restored in a converged state.
+     */
+    public void clearChanges() {
+        for (int k = 0; k < changeCount; k++) {
+            dirty[changes[k]] = false;
+        }
+        changeCount = 0;
+    }
+
+    /**
+     * @return true if some entries changed since the last advertisement
+     */
+    public boolean hasChanges() {
+        return changeCount > 0;
+    }
+
+    /**
+     * Encodes the entries changed since the last advertisement in the wire format and clears the change set.
+     *
+     * @return the message, held by the caller, or null if nothing changed
+     */
+    public VectorMessage drainMessage() {
+        if (changeCount == 0) {
+            return null;
+        }
+        /* Sorted for the delta encoding, which order the entries are merged in does not matter */
+        Arrays.sort(changes, 0, changeCount);
+        VectorMessage message = VectorMessage.encode(owner, changes, changeCount, cost, via, hop);
+        for (int k = 0; k < changeCount; k++) {
+            dirty[changes[k]] = false;
+        }
+        changeCount = 0;
+        return message;
+    }
+
+    /**
+     * Replaces the route to a destination and marks it as changed.
+     */
+    private void set(int d, int newCost, int newVia, int newHop) {
+        cost[d] = newCost;
+        via[d] = newVia;
+        hop[d] = newHop;
+        markChanged(d);
+    }
+
+    /**
+     * Starts the hold-down of a destination whose route is about to worsen, unless already running.
+     */
+    private void holdDown(int d, Policy policy, long now) {
+        if (policy.holdDown <= 0) {
+            return;
+        }
+        if (holdUntil == null) {
+            holdUntil = new long[cost.length];
+            heldCost = new int[cost.length];
+            held = new int[cost.length];
+        }
+        if (holdUntil[d] > now) {
+            return;
+        }
+        /* Still listed if it ran out but has not been expired yet */
+        if (holdUntil[d] == 0) {
+            held[heldCount++] = d;
+        }
+        holdUntil[d] = now + policy.holdDown;
+        heldCost[d] = cost[d];
+    }
+
+    /**
+     * Tells whether an offer must be ignored because its destination is in hold-down.
+     */
+    private boolean held(int d, int offered, long now) {
+        return holdUntil != null && holdUntil[d] > now && offered >= heldCost[d];
+    }
+
+    /**
+     * Adds a destination to the change set.
+     *
+     * @param d destination node ID.
+     */
+    private void markChanged(int d) {
+        if (!dirty[d]) {
+            dirty[d] = true;
+            changes[changeCount++] = d;
+        }
+    }
+}
@@ -12,51 +12,225 @@
 package dv;
 
 import peersim.cdsim.CDProtocol;
+import peersim.config.Configuration;
 import peersim.config.FastConfig;
+import peersim.config.IllegalParameterException;
+import peersim.core.CommonState;
 import peersim.core.Linkable;
 import peersim.core.Network;
 import peersim.core.Node;
+import peersim.edsim.EDProtocol;
+import peersim.edsim.EDSimulator;
+import peersim.transport.Transport;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.TreeMap;
 
 /**
  * The class implements a network layer Distance-Vector protocol.
  * It is based on the original Link-State protocol class.
  *
- * The protocol broadcast its local graph to all nodes in the network.
+ * In the default "linkstate" mode the protocol broadcasts its local graph to all nodes in the network.
  * Each instance of the protocol then computes the shortest path tree using the Bellman-Ford algorithm.
+ * With the "shared" option the nodes skip the flood and reference one immutable Topology snapshot
+ * of everyone's links instead, keeping only the edges they learn differently in a private overlay.
+ * Each node keeps this view of the network, and floods its own link changes, through a LinkGraph.
+ *
+ * The shortest path algorithm of linkstate mode is chosen with the "engine" parameter:
+ * "bellmanford" (default), "dijkstra" or "bucket", see PathEngine.
+ *
+ * For multipath experiments linkstate mode can also keep up to "ecmp" equal-cost next hops per destination,
+ * see Multipath, and the "kpaths" cheapest loop-free paths to a destination, see KShortest. Both are
+ * derived from the table and the local graph on first access.
+ *
+ * In "vector" mode each node only keeps its own distance vector. Every cycle the entries that changed
+ * since the last cycle are sent to the neighbours in the Linkable, which apply the Bellman-Ford update
+ * to their own vector. Nodes whose vector did not change send nothing.
+ *
+ * Links may change while the simulation runs, see Churn. In linkstate mode the ends of a changed link
+ * flood the new cost, and a node only recomputes if the change can affect its shortest path tree.
+ * In vector mode only the routes through the changed link are updated, and bad news is
+ * handled with the "split" (none, horizon or poison), "holddown" (cycles) and "limit" (smallest
+ * unreachable cost) parameters.
+ *
+ * In "area" mode the network is partitioned by AreaInitialiser. Each node computes a full table of its own
+ * area over the area's links only, and exchanges a distance vector of the other areas with its neighbours,
+ * holding the cost and next hop towards the nearest member of each area. Tables grow with the size of an area
+ * plus the number of areas instead of the network size, for routes that may be longer than the shortest,
+ * see StretchObserver. The partition is fixed at start, so area mode does not follow link changes.
+ *
+ * Vector mode can also run in the event-driven simulator, started by EDInitialiser, when a "transport"
+ * protocol is configured. Updates then travel as messages with the transport's latency. Entries that
+ * change within "window" time units of the first change are sent to the neighbours as one update,
+ * so a route that changes several times in the window is only sent once. Idle nodes schedule nothing.
+ *
+ * With the "mailbox" flag, updates sent in a cycle are posted to the receiver's Inbox and applied at the start
+ * of its next cycle, in the order of the senders' IDs, instead of at once. A node's cycle then only changes
+ * its own state, so ParallelCycle can run the cycles of all nodes at the same time with the results of a serial
+ * run with the same flag.
  *
  * @author A. Kostarevas, M. Ayiad
  * @version 1.0
  * April 2018
  */
-public class DistanceVectorProtocol implements CDProtocol {
+public class DistanceVectorProtocol implements CDProtocol, EDProtocol {
+
+    /* Configuration parameter for the protocol mode */
+    private static final String PAR_MODE = "mode";
+    /* Configuration flag for the shared topology snapshot in linkstate mode */
+    private static final String PAR_SHARED = "shared";
+    /* Configuration parameter for the shortest path engine in linkstate mode */
+    private static final String PAR_ENGINE = "engine";
+    /* Configuration parameter for split horizon in vector mode */
+    private static final String PAR_SPLIT = "split";
+    /* Configuration parameter for the hold-down time in vector mode */
+    private static final String PAR_HOLDDOWN = "holddown";
+    /* Configuration parameter for the smallest unreachable cost in vector mode */
+    private static final String PAR_LIMIT = "limit";
+    /* Configuration parameter for the transport of the event-driven variant */
+    private static final String PAR_TRANSPORT = "transport";
+    /* Configuration parameter for the batching window of the event-driven variant */
+    private static final String PAR_WINDOW = "window";
+    /* Configuration parameter for the number of equal-cost next hops kept per destination */
+    private static final String PAR_ECMP = "ecmp";
+    /* Configuration parameter for the number of cheapest loop-free paths kept per destination */
+    private static final String PAR_KPATHS = "kpaths";
+    /* Configuration flag for delivering updates through the receivers' mailboxes */
+    private static final String PAR_MAILBOX = "mailbox";
+
+    /* Timer event that sends the batched changes */
+    private static final Object FLUSH = new Object();
+    /* Arrays received updates are decoded into, one set per thread running cycles */
+    private static final ThreadLocal<VectorMessage.Reader> reader = ThreadLocal.withInitial(VectorMessage.Reader::new);
 
-    /* Enumerated states */
-    private enum State {
-        INITIALISE, BROADCAST, COMPUTE
+    /* Topology snapshot shared by all nodes, rebuilt after nodes initialise or links change */
+    private static SharedTopology shared = new SharedTopology();
+
+    /* Enumerated modes */
+    private enum Mode {
+        LINKSTATE, VECTOR, AREA
+    }
+
+    /* Enumerated states, also used by Metrics to label phase timings */
+    enum State {
+        INITIALISE, BROADCAST, COMPUTE, EXCHANGE
     }
 
-    /* Network graph as a set of edges (Unvisited nodes) */
-    private ArrayList<Edge> graph;
-    /* shortest path tree (visited nodes) */
+    /* mode of the protocol, shared by all clones */
+    private final Mode mode;
+    /* use the shared topology snapshot instead of flooding, shared by all clones */
+    private final boolean share;
+    /* shortest path algorithm, shared by all clones */
+    private final PathEngine engine;
+    /* update rules of vector mode, shared by all clones */
+    private final DistanceVector.Policy policy;
+    /* updates are sent through a Transport, shared by all clones */
+    private final boolean eventDriven;
+    /* time changes are batched for before they are sent, shared by all clones */
+    private final long window;
+    /* equal-cost next hops kept per destination, 1 for none, shared by all clones */
+    private final int ecmp;
+    /* cheapest loop-free paths kept per destination, 0 for none, shared by all clones */
+    private final int kpaths;
+    /* updates wait in the receiver's inbox until its next cycle, shared by all clones */
+    private final boolean mailbox;
+
+    /* Host node ID */
+    private int self;
+    /* updates posted to this node, only with the mailbox option */
+    private Inbox inbox;
+    /* Global protocol's ID, known once started in the event-driven variant or attached to the snapshot */
+    private int pid;
+    /* a FLUSH event is scheduled */
+    private boolean flushing;
+    /* Network graph of linkstate mode, or the shared snapshot with the node's own changes */
+    private LinkGraph links;
+    /* Shortest path costs and predecessors, indexed by destination node ID */
+    private DistanceVector table;
+    /* Own area table and vector of the other areas, in area mode */
+    private AreaTable areaTable;
+    /* next hop per destination, built lazily from table, dropped when a route changes */
+    private int[] nextHops;
+    /* equal-cost next hops, built lazily from table */
+    private Multipath multipath;
+    /* packed cheapest paths per destination, filled lazily */
+    private int[][] alternatives;
+    /* search the alternatives are found with, kept while they are */
+    private KShortest search;
+    /* shortest path tree (visited nodes), built lazily from table */
     private TreeMap<Long, Path> paths;
     /* current phase of the protocol */
     private State phase;
-    /* limits computation cycles to one  */
-    private boolean done;
+    /* cycle in which table entries last changed */
+    private long changedCycle;
+    /* number of table entries changed in that cycle */
+    private int changed;
 
     /**
      * A constructor.
      *
      * @param prefix required by PeerSim to access protocol's alias in the configuration file.
      */
-    public DistanceVectorProtocol(@SuppressWarnings("unused") String prefix) {
+    public DistanceVectorProtocol(String prefix) {
+        String name = Configuration.getString(prefix + "." + PAR_MODE, "linkstate");
+        try {
+            this.mode = Mode.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalParameterException(prefix + "." + PAR_MODE, "Unknown mode " + name);
+        }
+        this.share = Configuration.contains(prefix + "." + PAR_SHARED);
+        String engineName = Configuration.getString(prefix + "." + PAR_ENGINE, "bellmanford");
+        try {
+            this.engine = PathEngine.forName(engineName);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalParameterException(prefix + "." + PAR_ENGINE, e.getMessage());
+        }
+        String splitName = Configuration.getString(prefix + "." + PAR_SPLIT, "none");
+        DistanceVector.Split split;
+        try {
+            split = DistanceVector.Split.valueOf(splitName.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalParameterException(prefix + "." + PAR_SPLIT, "Unknown split horizon rule " + splitName);
+        }
+        int holdDown = Configuration.getInt(prefix + "." + PAR_HOLDDOWN, 0);
+        int limit = Configuration.getInt(prefix + "." + PAR_LIMIT, DistanceVector.INFINITY);
+        if (limit <= 0) {
+            throw new IllegalParameterException(prefix + "." + PAR_LIMIT, "Must be positive");
+        }
+        this.policy = new DistanceVector.Policy(split, holdDown, limit);
+        this.eventDriven = Configuration.contains(prefix + "." + PAR_TRANSPORT);
+        if (eventDriven && mode != Mode.VECTOR) {
+            throw new IllegalParameterException(prefix + "." + PAR_TRANSPORT, "Only supported in vector mode");
+        }
+        this.window = Configuration.getLong(prefix + "." + PAR_WINDOW, 1);
+        if (window < 0) {
+            throw new IllegalParameterException(prefix + "." + PAR_WINDOW, "Must not be negative");
+        }
+        this.ecmp = Configuration.getInt(prefix + "." + PAR_ECMP, 1);
+        if (ecmp < 1) {
+            throw new IllegalParameterException(prefix + "." + PAR_ECMP, "Must be positive");
+        }
+        if (ecmp > 1 && mode != Mode.LINKSTATE) {
+            throw new IllegalParameterException(prefix + "." + PAR_ECMP, "Only supported in linkstate mode");
+        }
+        this.kpaths = Configuration.getInt(prefix + "." + PAR_KPATHS, 0);
+        if (kpaths < 0) {
+            throw new IllegalParameterException(prefix + "." + PAR_KPATHS, "Must not be negative");
+        }
+        if (kpaths > 0 && mode != Mode.LINKSTATE) {
+            throw new IllegalParameterException(prefix + "." + PAR_KPATHS, "Only supported in linkstate mode");
+        }
+        this.mailbox = Configuration.contains(prefix + "." + PAR_MAILBOX);
+        if (mailbox && eventDriven) {
+            throw new IllegalParameterException(prefix + "." + PAR_MAILBOX, "Not supported with a transport");
+        }
         /* Start in INIT phase */
         this.phase = State.INITIALISE;
-        /* Enable computation cycle */
-        this.done = false;
+        /* Nothing computed yet */
+        this.changedCycle = -1;
+        this.changed = 0;
     }
 
     /**
@@ -71,25 +245,119 @@ public class DistanceVectorProtocol implements CDProtocol {
         Linkable lnk = (Linkable) host.getProtocol(FastConfig.getLinkable(pid));
         /* Reference host's node ID */
         long nodeId = host.getID();
+        /* Time the phase for Metrics */
+        State current = phase;
+        long start = System.nanoTime();
+        /* Updates posted in the previous cycle */
+        if (mailbox) {
+            for (Object update : inbox.take(CommonState.getTime())) {
+                apply(update);
+            }
+        }
         /* Current phase */
         switch (phase) {
             case INITIALISE:
-                /* Initialise graph */
-                init(lnk, nodeId);
-                /* Transit to next phase */
-                phase = State.BROADCAST;
+                initialise(lnk, nodeId);
                 break;
             case BROADCAST:
-                /* Broadcast the local graph */
-                broadcast(pid);
+                if (share) {
+                    /* Reference the shared snapshot instead of flooding */
+                    attach(pid);
+                } else {
+                    /* Broadcast the local graph */
+                    links.broadcast(pid);
+                }
                 /* Transit to next phase */
                 phase = State.COMPUTE;
                 break;
             case COMPUTE:
+                /* Flood own link changes */
+                links.flood(pid);
                 /* Compute shortest paths */
                 compute(nodeId);
                 break;
+            case EXCHANGE:
+                /* Send the local vector to neighbours */
+                advertise(host, lnk, pid);
+                break;
         }
+        Metrics.time(current, System.nanoTime() - start);
+    }
+
+    /**
+     * Starts the event-driven variant: initialises the local vector and schedules the first update.
+     * Called by EDInitialiser.
+     *
+     * @param host Reference to host node.
+     * @param pid Global protocol's ID in this simulation.
+     */
+    void start(Node host, int pid) {
+        this.pid = pid;
+        initialise((Linkable) host.getProtocol(FastConfig.getLinkable(pid)), host.getID());
+        schedule(host);
+    }
+
+    /**
+     * PeerSim event service of the event-driven variant. Handles updates from neighbours
+     * and the FLUSH timer.
+     *
+     * @param host Reference to host node.
+     * @param pid Global protocol's ID in this simulation.
+     * @param event the event to process.
+     */
+    @Override
+    public void processEvent(Node host, int pid, Object event) {
+        long start = System.nanoTime();
+        if (event == FLUSH) {
+            flushing = false;
+            advertise(host, (Linkable) host.getProtocol(FastConfig.getLinkable(pid)), pid);
+        } else {
+            receive((VectorMessage) event);
+        }
+        schedule(host);
+        Metrics.time(State.EXCHANGE, System.nanoTime() - start);
+    }
+
+    /**
+     * Schedules a FLUSH of the local vector after the batching window, unless one is scheduled already
+     * or there is nothing to send. A route in hold-down keeps the timer running until it expires.
+     *
+     * @param host Reference to host node.
+     */
+    private void schedule(Node host) {
+        if (flushing || table == null || (!table.hasChanges() && !table.holding())) {
+            return;
+        }
+        flushing = true;
+        EDSimulator.add(window, FLUSH, host, pid);
+    }
+
+    /**
+     * Initialises the local vector or graph and moves to the next phase.
+     *
+     * @param lnk Reference local Linkable protocol.
+     * @param nodeId Host Node ID.
+     */
+    private void initialise(Linkable lnk, long nodeId) {
+        this.self = (int) nodeId;
+        if (mode == Mode.VECTOR) {
+            /* Initialise vector */
+            initVector(lnk, nodeId);
+            /* Transit to next phase */
+            phase = State.EXCHANGE;
+            return;
+        }
+        if (mode == Mode.AREA) {
+            /* Initialise own area table and area vector */
+            initAreas();
+            /* Transit to next phase */
+            phase = State.EXCHANGE;
+            return;
+        }
+        /* Initialise graph */
+        init(lnk, nodeId);
+        /* Transit to next phase */
+        phase = State.BROADCAST;
     }
 
     /**
@@ -101,7 +369,8 @@ public class DistanceVectorProtocol implements CDProtocol {
     private void init(Linkable lnk, long nodeId) {
         long neighborId;
         /* Create information containers */
-        this.graph = new ArrayList<>();
+        this.links = new LinkGraph((int) nodeId, lnk.degree(), share, mailbox);
+        this.table = null;
         this.paths = new TreeMap<>();
         /* Add neighbours - access neighbours in the Linkable */
         for (int i = 0; i < lnk.degree(); i++) {
@@ -110,103 +379,551 @@ public class DistanceVectorProtocol implements CDProtocol {
             /* Get cost of the link between this node and neighbour i */
             int cost = CostInitialiser.getCost(nodeId, neighborId);
             /* Add edge to local graph */
-            graph.add(new Edge(nodeId, neighborId, cost));
+            links.add((int) nodeId, (int) neighborId, cost);
+        }
+        /* Local graphs changed, the next snapshot must be rebuilt */
+        if (share) {
+            shared.invalidate();
         }
     }
 
     /**
-     * Broadcasts local graph to peers.
      * @param pid Global protocol's ID in this simulation.
+     * @return the latest version of the shared snapshot, rebuilt after own links changed
      */
-    private void broadcast(int pid) {
-        /* Get network size */
-        int size = Network.size();
-        /* Broadcast to all nodes */
-        for (int i = 0; i < size; i++) {
-            /* Access node i */
-            Node tempNode = Network.get(i);
-            /* Access DV protocol in node i */
-            DistanceVectorProtocol tempProtocol = (DistanceVectorProtocol) tempNode.getProtocol(pid);
-            /* Copy local graph */
-            ArrayList<Edge> tempGraph = new ArrayList<>(graph);
-            /* Send the copy to node i */
-            tempProtocol.receive(tempGraph);
+    private static SharedTopology.Version latest(int pid) {
+        return shared.latest(Network.size(), () -> snapshot(pid));
+    }
+
+    /**
+     * Forgets the shared snapshot of the previous experiment. Called by Sweep before a run in a reused class loader.
+     */
+    static void reset() {
+        shared = new SharedTopology();
+    }
+
+    /**
+     * Builds a snapshot from every node's own edges.
+     *
+     * @param pid Global protocol's ID in this simulation.
+     * @return the snapshot
+     */
+    private static Topology snapshot(int pid) {
+        List<EdgeList> local = new ArrayList<>(Network.size());
+        for (int i = 0; i < Network.size(); i++) {
+            DistanceVectorProtocol protocol = (DistanceVectorProtocol) Network.get(i).getProtocol(pid);
+            local.add(protocol.links != null ? protocol.links.ownEdges() : new EdgeList(0));
+        }
+        return new Topology(local);
+    }
+
+    /**
+     * The network as every node announces it, which is the graph a node knows once all floods arrived.
+     * With the shared option this is the shared snapshot. Used by AllPairs.
+     *
+     * @param pid Global protocol's ID in this simulation.
+     * @return the snapshot
+     */
+    Topology network(int pid) {
+        return share ? latest(pid).snapshot : snapshot(pid);
+    }
+
+    /**
+     * Moves the overlay onto the latest shared snapshot, keeping the edges as the node knows them.
+     * Links changed by controls are in the latest snapshot. Without the snapshot, completes a restored graph.
+     * Used by AllPairs before knows().
+     */
+    void follow() {
+        if (links == null) {
+            return;
+        }
+        if (links.attached()) {
+            links.rebase(latest(pid));
+        } else {
+            links.expand();
         }
     }
 
     /**
-     * Compute shortest path using Bellman-Ford algorithm.
+     * Tells whether the node knows exactly the edges of a snapshot. Used by AllPairs.
+     *
+     * @param network snapshot returned by network().
+     * @return true if a shortest path tree over the snapshot is the node's own
+     */
+    boolean knows(Topology network) {
+        return links != null && links.knows(network);
+    }
+
+    /**
+     * References the shared snapshot in place of a flooded graph.
+     *
+     * @param pid Global protocol's ID in this simulation.
+     */
+    private void attach(int pid) {
+        this.pid = pid;
+        links.attach(latest(pid));
+    }
+
+    /**
+     * Initialises local distance vector with the links to neighbours.
+     *
+     * @param lnk Reference local Linkable protocol.
      * @param nodeId Host Node ID.
      */
-    private void compute(long nodeId) {
-        /* Do it only once */
-        if (done) {
+    private void initVector(Linkable lnk, long nodeId) {
+        this.table = new DistanceVector((int) nodeId, Network.size());
+        this.paths = null;
+        this.nextHops = null;
+        int updated = 1;
+        /* Add neighbours - access neighbours in the Linkable */
+        for (int i = 0; i < lnk.degree(); i++) {
+            long neighborId = lnk.getNeighbor(i).getID();
+            if (table.link((int) neighborId, CostInitialiser.getCost(nodeId, neighborId))) {
+                updated++;
+            }
+        }
+        countChanges(updated);
+    }
+
+    /**
+     * Computes the table of the own area over the area's shared snapshot and starts the area vector.
+     */
+    private void initAreas() {
+        this.areaTable = AreaInitialiser.table(self, engine);
+        this.paths = null;
+        /* The own area entry and the routes to the members of the own area */
+        countChanges(1 + areaTable.reachable());
+    }
+
+    /**
+     * Sends the entries of the local distance vector that changed since the last cycle
+     * to the neighbours in the Linkable. Does nothing if the vector is unchanged.
+     *
+     * @param host Reference to host node.
+     * @param lnk Reference local Linkable protocol.
+     * @param pid Global protocol's ID in this simulation.
+     */
+    private void advertise(Node host, Linkable lnk, int pid) {
+        VectorMessage message;
+        if (mode == Mode.AREA) {
+            message = areaTable.drainMessage();
+        } else {
+            /* Routes whose hold-down ended are advertised again */
+            table.expire(CommonState.getTime());
+            message = table.drainMessage();
+        }
+        if (message == null) {
             return;
         }
-        /* Initialise graph */
-        for (long i = 0; i < Network.size(); i++) {
-            paths.put(i, new Path(i, i, Integer.MAX_VALUE));
-        }
-        /* Source node costs 0 */
-        paths.get(nodeId).cost = 0;
-        /* Relax edges repeatedly */
-        for (int i = 0; i < (Network.size() - 1); i++) {
-            /* For every edge */
-            for (Edge edge : graph) {
-                /* Get indexes */
-                long src = edge.source;
-                long dst = edge.destination;
-                /* Skip unreached (can't add to infinity) */
-                if (paths.get(src).cost >= Integer.MAX_VALUE) {
-                    continue;
-                }
-                /* Calculate costs */
-                int cost = edge.cost;
-                int oldCost = paths.get(dst).cost;
-                int newCost = paths.get(src).cost + cost;
-                /* Update if cost has decreased */
-                if (newCost < oldCost) {
-                    paths.get(dst).cost = newCost;
-                    /* If direct path */
-                    if (edge.source == nodeId) {
-                        paths.get(dst).predecessor = edge.destination;
-                    } else {
-                        paths.get(dst).predecessor = edge.source;
-                    }
-                }
+        int sent = 0;
+        for (int i = 0; i < lnk.degree(); i++) {
+            /* Access DV protocol in neighbour i */
+            Node neighbor = lnk.getNeighbor(i);
+            if (!neighbor.isUp()) {
+                continue;
+            }
+            /* Send the update to neighbour i, which releases it once read */
+            message.retain();
+            if (eventDriven) {
+                ((Transport) host.getProtocol(FastConfig.getTransport(pid))).send(host, neighbor, message, pid);
+            } else {
+                ((DistanceVectorProtocol) neighbor.getProtocol(pid)).deliver(self, message);
+            }
+            sent++;
+        }
+        Metrics.messages.add(sent);
+        Metrics.edges.add((long) sent * message.entries());
+        Metrics.bytes.add((long) sent * message.bytes());
+        message.release();
+    }
+
+    /**
+     * Decodes a triggered update from a neighbour, applies it and releases the message.
+     *
+     * @param message the update in its wire format.
+     */
+    private void receive(VectorMessage message) {
+        VectorUpdate update = message.decode(reader.get());
+        message.release();
+        receive(update);
+    }
+
+    /**
+     * Hands an update to this node: right away, or through its inbox with the mailbox option.
+     * Used by the neighbours' advertisements and by LinkGraph.
+     *
+     * @param sender sender node ID.
+     * @param update a VectorMessage, or an EdgeList the sender no longer changes.
+     */
+    void deliver(int sender, Object update) {
+        if (mailbox) {
+            inbox.post(CommonState.getTime(), sender, update);
+        } else {
+            apply(update);
+        }
+    }
+
+    /**
+     * Applies an update handed over by deliver().
+     *
+     * @param update a VectorMessage or an EdgeList.
+     */
+    private void apply(Object update) {
+        if (update instanceof VectorMessage) {
+            receive((VectorMessage) update);
+        } else if (links != null) {
+            links.receive((EdgeList) update, table);
+        }
+    }
+
+    /**
+     * Receives a triggered update from a neighbour and updates local vector.
+     *
+     * @param update entries changed at the neighbour.
+     */
+    private void receive(VectorUpdate update) {
+        /* Not initialised yet */
+        if (mode == Mode.AREA ? areaTable == null : table == null) {
+            return;
+        }
+        int linkCost = CostInitialiser.getCost(self, update.source);
+        /* No usable link to the sender */
+        if (linkCost == DistanceVector.INFINITY) {
+            return;
+        }
+        int updated = mode == Mode.AREA ? areaTable.merge(linkCost, update)
+                : table.merge(linkCost, update, policy, CommonState.getTime());
+        Metrics.rounds.increment();
+        Metrics.relaxations.add(update.size);
+        if (updated > 0) {
+            countChanges(updated);
+            /* Path tree view and next hops are rebuilt on next access */
+            paths = null;
+            nextHops = null;
+        }
+    }
+
+    /**
+     * Adds to the number of table entries changed in the current cycle.
+     *
+     * @param updated number of changed entries.
+     */
+    private void countChanges(int updated) {
+        long now = CommonState.getTime();
+        if (now != changedCycle) {
+            changedCycle = now;
+            changed = 0;
+        }
+        changed += updated;
+    }
+
+    /**
+     * Number of table entries changed in a given cycle. Used by the observer to follow convergence.
+     *
+     * @param cycle simulation cycle.
+     * @return number of entries changed in that cycle
+     */
+    public int getChanged(long cycle) {
+        return cycle == changedCycle ? changed : 0;
+    }
+
+    /**
+     * Applies a change in the cost of one of the host's links. Called by Churn on both ends of the link.
+     *
+     * @param neighbour the node at the other end.
+     * @param oldCost previous cost, Integer.MAX_VALUE if the link was down.
+     * @param newCost new cost, Integer.MAX_VALUE if the link is down.
+     */
+    void linkChanged(int neighbour, int oldCost, int newCost) {
+        /* The areas are computed once over the starting topology */
+        if (mode == Mode.AREA) {
+            return;
+        }
+        if (mode == Mode.VECTOR) {
+            if (table == null) {
+                return;
+            }
+            int updated = table.relink(neighbour, oldCost, newCost, policy, CommonState.getTime());
+            /* The neighbour may now offer better routes, it needs the whole vector to offer ours */
+            if (newCost < oldCost) {
+                table.markAll();
+            }
+            if (updated > 0) {
+                countChanges(updated);
+                paths = null;
+                nextHops = null;
             }
+            if (eventDriven) {
+                schedule(Network.get(self));
+            }
+            return;
+        }
+        if (links == null) {
+            return;
+        }
+        /* The snapshot is rebuilt from the own links */
+        if (share) {
+            shared.invalidate();
+        }
+        links.linkChanged(neighbour, oldCost, newCost, table);
+    }
+
+    /**
+     * Restarts a node that came back up: drops its state and initialises it right away,
+     * so that it can take updates in the current cycle. With the shared snapshot nothing is
+     * broadcast, so the node's own links are flooded as changes instead.
+     *
+     * @param host Reference to host node.
+     * @param pid Global protocol's ID in this simulation.
+     */
+    void join(Node host, int pid) {
+        restart();
+        if (eventDriven) {
+            start(host, pid);
+        } else {
+            initialise((Linkable) host.getProtocol(FastConfig.getLinkable(pid)), host.getID());
+        }
+        if (share && links != null) {
+            links.announce();
         }
-        /* Check for negative-weight cycles */
-        for (Edge edge : graph) {
-            if (paths.get(edge.source).cost + edge.cost < paths.get(edge.destination).cost) {
-                System.out.println("Graph contains a negative-weight cycle");
+    }
+
+    /**
+     * Restores a converged table saved by Checkpoint, skipping the INITIALISE, BROADCAST and COMPUTE phases.
+     * In linkstate mode the graph the flood would have built is the snapshot of every node's own links taken
+     * in resume(), built once for all nodes; each node copies it into its graph on its first link change,
+     * so that later changes are handled as usual. Called by Checkpoint.
+     *
+     * @param host Reference to host node.
+     * @param pid Global protocol's ID in this simulation.
+     * @param restored the saved table, with no changes pending.
+     */
+    void restore(Node host, int pid, DistanceVector restored) {
+        restart();
+        this.pid = pid;
+        int linkable = FastConfig.getLinkable(pid);
+        initialise((Linkable) host.getProtocol(linkable), host.getID());
+        if (mode == Mode.LINKSTATE) {
+            if (!share) {
+                /* The snapshot taken in resume() must hold the restored links */
+                shared.invalidate();
             }
+            links.restore();
+            phase = State.COMPUTE;
         }
-        done = true;
+        table = restored;
+        paths = null;
+        nextHops = null;
+        multipath = null;
+        alternatives = null;
+        search = null;
+        changedCycle = -1;
+        changed = 0;
     }
 
     /**
-     * Receives a graph form a neighbour and updates local graph
-     * removes duplicate edges if any
+     * References the shared snapshot once every node was restored, or keeps it as the network the
+     * graph is to be completed from. Called by Checkpoint.
      *
-     * @param neighborGraph a copy of neighbour's local graph
+     * @param pid Global protocol's ID in this simulation.
      */
-    private void receive(ArrayList<Edge> neighborGraph) {
-        /* For each edge in the neighbour's graph */
-        for (Edge aNeighborGraph : neighborGraph) {
-            /* Ignore duplicate edges */
-            boolean duplicate = false;
-            for (Edge aGraph : graph) {
-                if (aNeighborGraph.equals(aGraph)) {
-                    duplicate = true;
-                    break;
-                }
+    void resume(int pid) {
+        if (links != null && links.resuming()) {
+            links.resume(latest(pid));
+        }
+    }
+
+    /**
+     * Tells whether the node's graph is complete and changed since the last computation.
+     * Used by ParallelCompute.
+     *
+     * @return true if compute would do work
+     */
+    boolean needsCompute() {
+        return phase == State.COMPUTE && links.isStale();
+    }
+
+    /**
+     * Tells whether the node's table can no longer change without a change in the network.
+     * Used by MetricsObserver to stop the simulation.
+     *
+     * @return true if the node has converged
+     */
+    public boolean isStable() {
+        /* Waiting updates may still change the table */
+        if (mailbox && !inbox.isEmpty()) {
+            return false;
+        }
+        if (mode == Mode.VECTOR) {
+            return phase == State.EXCHANGE && !table.hasChanges() && !table.holding() && !flushing;
+        }
+        if (mode == Mode.AREA) {
+            return phase == State.EXCHANGE && !areaTable.hasChanges();
+        }
+        return phase == State.COMPUTE && links.isSettled();
+    }
+
+    /**
+     * Compute shortest path using the configured engine, Bellman-Ford by default.
+     * Only touches this instance's state, so distinct instances may compute concurrently.
+     * @param nodeId Host Node ID.
+     */
+    void compute(long nodeId) {
+        /* Only when the local graph changed */
+        if (!links.isStale()) {
+            return;
+        }
+        recompute(nodeId);
+    }
+
+    /**
+     * Compute shortest paths unconditionally, replacing the current table.
+     * @param nodeId Host Node ID.
+     */
+    void recompute(long nodeId) {
+        int size = Network.size();
+        DistanceVector result = new DistanceVector((int) nodeId, size);
+        follow();
+        links.compute(engine, result);
+        install(result);
+    }
+
+    /**
+     * Replaces the current table with a computed one, counting the entries that changed.
+     * Used by AllPairs for tables computed outside the node.
+     *
+     * @param result the new table.
+     */
+    void install(DistanceVector result) {
+        int size = result.size();
+        int nodeId = result.owner;
+        /* Count entries that differ from the previous table */
+        boolean first = table == null || table.size() != size;
+        int updated = 0;
+        for (int i = 0; i < size; i++) {
+            int oldCost = first ? (i == nodeId ? 0 : DistanceVector.INFINITY) : table.cost[i];
+            int oldVia = first ? i : table.via[i];
+            if (result.cost[i] != oldCost || result.via[i] != oldVia) {
+                updated++;
             }
-            /* Add new edge */
-            if (!duplicate) {
-                graph.add(aNeighborGraph);
+        }
+        countChanges(updated);
+        table = result;
+        /* Path tree view and multipath tables are rebuilt on next access */
+        paths = null;
+        nextHops = null;
+        multipath = null;
+        alternatives = null;
+        search = null;
+        if (links != null) {
+            links.computed();
+        }
+    }
+
+    /**
+     * Drops all local state and returns to the INITIALISE phase.
+     */
+    void restart() {
+        phase = State.INITIALISE;
+        if (mailbox) {
+            inbox.clear();
+        }
+        flushing = false;
+        links = null;
+        table = null;
+        areaTable = null;
+        paths = null;
+        nextHops = null;
+        multipath = null;
+        alternatives = null;
+        search = null;
+    }
+
+    /**
+     * Access to local routing table without building the path tree. Used by the observers.
+     *
+     * @return the local table, or null before the first computation
+     */
+    DistanceVector getTable() {
+        return table;
+    }
+
+    /**
+     * Access to the local table of area mode. Used by StretchObserver.
+     *
+     * @return the own area table and area vector, or null outside area mode and before initialisation
+     */
+    AreaTable getAreaTable() {
+        return areaTable;
+    }
+
+    /**
+     * Next hop per destination of the local table. Used by Forwarding.
+     *
+     * @return the next hops, -1 for the host and unreachable destinations, or null in area mode
+     * and before the first computation
+     */
+    int[] getNextHops() {
+        if (table == null) {
+            return null;
+        }
+        if (nextHops == null) {
+            if (mode == Mode.VECTOR) {
+                /* The vector keeps its next hops, but changes them in place, so they are copied
+                   and the copy is dropped whenever a route changes */
+                nextHops = new int[table.size()];
+                for (int d = 0; d < nextHops.length; d++) {
+                    nextHops[d] = d == self || table.cost[d] == DistanceVector.INFINITY ? -1 : table.hop[d];
+                }
+            } else {
+                nextHops = Routes.nextHops(self, table.cost, table.via);
             }
         }
+        return nextHops;
+    }
+
+    /**
+     * Tells whether the local table is changed in place, as in vector mode, rather than replaced
+     * by every computation. Used by RouteService to copy only tables that may change later.
+     *
+     * @return true in vector mode
+     */
+    boolean changesInPlace() {
+        return mode == Mode.VECTOR;
+    }
+
+    /**
+     * Equal-cost next hops of the local table, built on first access after each computation.
+     *
+     * @return the next hop sets, or null without the "ecmp" option and before the first computation
+     */
+    public Multipath getMultipath() {
+        if (multipath == null && ecmp > 1 && table != null) {
+            multipath = Multipath.build(self, table.size(), links.edges(), table.cost, ecmp);
+        }
+        return multipath;
+    }
+
+    /**
+     * The cheapest loop-free paths to a destination over the local graph, found on first access
+     * after each computation and kept until the next one.
+     *
+     * @param destination destination node ID.
+     * @return the paths packed as by KShortest, or null without the "kpaths" option, before the first
+     * computation and for the host itself
+     */
+    public int[] getAlternatives(int destination) {
+        if (kpaths == 0 || table == null || destination == self || destination < 0 || destination >= table.size()) {
+            return null;
+        }
+        if (alternatives == null) {
+            alternatives = new int[table.size()][];
+            search = new KShortest(table.size(), links.edges());
+        }
+        if (alternatives[destination] == null) {
+            alternatives[destination] = search.paths(self, destination, kpaths);
+        }
+        return alternatives[destination];
     }
 
     /**
@@ -215,18 +932,37 @@ public class DistanceVectorProtocol implements CDProtocol {
      * @return the local path tree
      */
     public TreeMap<Long, Path> getPaths() {
+        if (paths == null && table != null) {
+            paths = new TreeMap<>();
+            for (int i = 0; i < table.size(); i++) {
+                paths.put((long) i, new Path(i, table.via[i], table.cost[i]));
+            }
+        }
         return paths;
     }
 
     /**
-     * used by PeerSim to clone this protocol at the start of the simulation
+     * used by PeerSim to clone this protocol at the start of the simulation.
+     * Clones share the configuration, every node starts without local state and, with the mailbox option,
+     * gets its own inbox.
      */
     @Override
     public Object clone() {
-        Object o = null;
+        DistanceVectorProtocol o = null;
         try {
-            o = super.clone();
-        } catch (Exception ignored) { }
+            o = (DistanceVectorProtocol) super.clone();
+        } catch (CloneNotSupportedException ignored) {
+            return null;
+        }
+        o.inbox = mailbox ? new Inbox() : null;
+        o.restart();
         return o;
     }
+
+    /**
+     * @return true if updates are delivered through the receivers' inboxes. Used by ParallelCycle.
+     */
+    boolean usesMailbox() {
+        return mailbox;
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Locale;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Network;
+
+/**
+ * The control reports the path diversity of DistanceVectorProtocol's multipath tables. For every reachable
+ * destination of each sampled source it counts the equal-cost next hops and the cheapest loop-free paths,
+ * and prints one CSV line per execution: the cycle, the pairs looked at, the pairs with more than one
+ * equal-cost next hop, the mean and largest number of next hops, the mean number of loop-free paths,
+ * the mean cost of the last of them against the shortest, and the memory of all nodes' next hop sets.
+ *
+ * Parameters: "protocol" the DistanceVectorProtocol, "sources" number of sources spread evenly over
+ * the node IDs (default 10, 0 for every node).
+ * PREREQUISITE, the protocol must run in linkstate mode with the "ecmp" or "kpaths" option.
+ */
+public class DiversityObserver implements Control {
+
+    private static final String PAR_PROT = "protocol";
+    private static final String PAR_SOURCES = "sources";
+
+    private final int pid;                  //DistanceVectorProtocol protocol ID
+    private final int sources;              //sources sampled, 0 for all
+    private boolean header;                 //CSV header written
+
+    /**
+     * A constructor
+     *
+     * @param prefix a string provided by PeerSim and used to access parameters from the configuration file.
+     */
+    public DiversityObserver(String prefix) {
+        this.pid = Configuration.getPid(prefix + "." + PAR_PROT);
+        this.sources = Configuration.getInt(prefix + "." + PAR_SOURCES, 10);
+        if (sources < 0) {
+            throw new IllegalParameterException(prefix + "." + PAR_SOURCES, "Must not be negative");
+        }
+    }
+
+    /**
+     * Implementation of the common method. This method is called in each cycle.
+     */
+    @Override
+    public boolean execute() {
+        int n = Network.size();
+        long bytes = 0;
+        for (int i = 0; i < n; i++) {
+            Multipath multipath = protocol(i).getMultipath();
+            if (multipath != null) {
+                bytes += multipath.bytes();
+            }
+        }
+        int count = sources == 0 || sources > n ? n : sources;
+        long pairs = 0, multi = 0, hops = 0, found = 0;
+        int most = 0;
+        double spread = 0;
+        for (int r = 0; r < count; r++) {
+            int s = (int) ((long) r * n / count);
+            DistanceVectorProtocol protocol = protocol(s);
+            DistanceVector table = protocol.getTable();
+            if (table == null || !Network.get(s).isUp()) {
+                continue;
+            }
+            Multipath multipath = protocol.getMultipath();
+            for (int d = 0; d < table.size(); d++) {
+                if (d == s || table.cost[d] == DistanceVector.INFINITY) {
+                    continue;
+                }
+                pairs++;
+                if (multipath != null) {
+                    int next = multipath.count(d);
+                    hops += next;
+                    most = Math.max(most, next);
+                    if (next > 1) {
+                        multi++;
+                    }
+                }
+                int[] packed = protocol.getAlternatives(d);
+                if (packed != null && packed.length > 0) {
+                    found += KShortest.count(packed);
+                    /* The last path starts after the others, its cost first */
+                    int last = 0;
+                    for (int at = 0; at < packed.length; at += 2 + packed[at + 1]) {
+                        last = at;
+                    }
+                    spread += packed[0] == 0 ? 1 : (double) packed[last] / packed[0];
+                }
+            }
+        }
+        if (!header) {
+            System.out.println("cycle,pairs,multipath_pairs,mean_next_hops,max_next_hops,mean_paths,"
+                    + "mean_path_spread,ecmp_bytes");
+            header = true;
+        }
+        System.out.println(String.format(Locale.ROOT, "%d,%d,%d,%.4f,%d,%.4f,%.4f,%d", CommonState.getTime(),
+                pairs, multi, pairs > 0 ? (double) hops / pairs : 0, most, pairs > 0 ? (double) found / pairs : 0,
+                pairs > 0 ? spread / pairs : 0, bytes));
+        return false;
+    }
+
+    private DistanceVectorProtocol protocol(int i) {
+        return (DistanceVectorProtocol) Network.get(i).getProtocol(pid);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import peersim.config.Configuration;
+import peersim.config.FastConfig;
+import peersim.config.IllegalParameterException;
+import peersim.core.Control;
+import peersim.core.Network;
+import peersim.core.Node;
+
+/**
+ * The initialiser starts the event-driven variant of DistanceVectorProtocol. Every node that is up
+ * fills its distance vector with the links to its neighbours and schedules its first update.
+ * From then on nodes only act on the updates they receive.
+ *
+ * Parameters: "protocol" the DistanceVectorProtocol, which must have a "transport".
+ * PREREQUISITE, must be declared after CostInitialiser in PeerSim.
+ */
+public class EDInitialiser implements Control {
+
+    private static final String PAR_PROT = "protocol";
+
+    private final int pid;                  //DistanceVectorProtocol protocol ID
+
+    /**
+     * A constructor
+     *
+     * @param prefix a string provided by PeerSim and used to access parameters from the configuration file.
+     */
+    public EDInitialiser(String prefix) {
+        this.pid = Configuration.getPid(prefix + "." + PAR_PROT);
+        if (!FastConfig.hasTransport(pid)) {
+            throw new IllegalParameterException(prefix + "." + PAR_PROT, "Protocol has no transport");
+        }
+    }
+
+    /**
+     * Implementation of the common method. This method is called once at simulation start time.
+     */
+    @Override
+    public boolean execute() {
+        for (int i = 0; i < Network.size(); i++) {
+            Node node = Network.get(i);
+            if (node.isUp()) {
+                ((DistanceVectorProtocol) node.getProtocol(pid)).start(node, pid);
+            }
+        }
+        return false;
+    }
+}
@@ -49,7 +49,7 @@ public class Edge implements Comparable<Edge>{
 	}
 	
 	@Override
-	public int hashCode() { return (int)destination; }
+	public int hashCode() { return Long.hashCode(EdgeSet.key(source, destination)); }
 	
 	@Override
 	public boolean equals(Object o) {
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Arrays;
+
+/**
+ * The class is a growable list of directed edges kept in parallel primitive arrays, in insertion order.
+ * Node IDs are stored as int, like everywhere else in the protocol, and the arrays can be handed
+ * to a PathEngine without copying. Callers read the entries through the accessors or the backing arrays.
+ */
+public final class EdgeList {
+
+    private int[] src;                  //edge source node IDs
+    private int[] dst;                  //edge destination node IDs
+    private int[] cost;                 //edge costs
+    private int size;                   //number of edges
+    private int[] rowStart;             //row starts of the edges grouped by source, null until needed again
+    private int[] rowEdges;             //edge positions grouped by source
+
+    /**
+     * A constructor.
+     *
+     * @param capacity expected number of edges.
+     */
+    public EdgeList(int capacity) {
+        capacity = Math.max(4, capacity);
+        this.src = new int[capacity];
+        this.dst = new int[capacity];
+        this.cost = new int[capacity];
+    }
+
+    /**
+     * A constructor over existing arrays, holding their first size entries.
+     *
+     * @param src edge source node IDs.
+     * @param dst edge destination node IDs.
+     * @param cost edge costs.
+     * @param size number of edges.
+     */
+    public EdgeList(int[] src, int[] dst, int[] cost, int size) {
+        this.src = src;
+        this.dst = dst;
+        this.cost = cost;
+        this.size = size;
+    }
+
+    /**
+     * @return a copy of the list, unaffected by later changes to this one
+     */
+    public EdgeList copy() {
+        return new EdgeList(Arrays.copyOf(src, size), Arrays.copyOf(dst, size), Arrays.copyOf(cost, size), size);
+    }
+
+    /**
+     * Appends an edge.
+     *
+     * @param source source node ID.
+     * @param destination destination node ID.
+     * @param cost edge cost.
+     */
+    public void add(int source, int destination, int cost) {
+        if (size == src.length) {
+            int capacity = Math.max(4, size << 1);
+            src = Arrays.copyOf(src, capacity);
+            dst = Arrays.copyOf(dst, capacity);
+            this.cost = Arrays.copyOf(this.cost, capacity);
+        }
+        src[size] = source;
+        dst[size] = destination;
+        this.cost[size] = cost;
+        size++;
+        rowStart = null;
+    }
+
+    /**
+     * @return number of edges
+     */
+    public int size() {
+        return size;
+    }
+
+    public int source(int i) { return src[i]; }
+
+    public int destination(int i) { return dst[i]; }
+
+    public int cost(int i) { return cost[i]; }
+
+    public void setCost(int i, int c) { cost[i] = c; }
+
+    /**
+     * Groups the edges by source node in compressed sparse rows, for engines that search row by row.
+     * The rows are kept until an edge is added; cost changes leave them valid.
+     *
+     * @param n number of nodes, above every node ID in the list.
+     * @return row starts, n+1 entries, over the positions given by rowEdges()
+     */
+    public int[] rowStarts(int n) {
+        if (rowStart == null || rowStart.length != n + 1) {
+            int[] offset = new int[n + 1];
+            rowEdges = Dijkstra.adjacency(n, src, size, 0, 0, offset);
+            rowStart = offset;
+        }
+        return rowStart;
+    }
+
+    /**
+     * Edge positions grouped by source, valid after rowStarts(). Only to be read.
+     *
+     * @return the positions, row by row
+     */
+    public int[] rowEdges() { return rowEdges; }
+
+    /**
+     * Source IDs backing the list, valid up to size(). Only to be read.
+     */
+    public int[] sources() { return src; }
+
+    /**
+     * Destination IDs backing the list, valid up to size(). Only to be read.
+     */
+    public int[] destinations() { return dst; }
+
+    /**
+     * Costs backing the list, valid up to size(). Only to be read.
+     */
+    public int[] costs() { return cost; }
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.Control;
+import peersim.core.Linkable;
+import peersim.core.Network;
+
+/**
+ * The initialiser reads the network from an edge list file. It wires the Linkables and fills the
+ * global cost store, replacing both the wiring control and CostInitialiser.
+ *
+ * The text format has one edge per line: source ID, destination ID and an optional cost (default 1),
+ * separated by spaces, tabs or commas. Lines starting with '#' or '%' are comments. The file is mapped
+ * in chunks that are parsed in parallel, and edges are kept in primitive arrays only.
+ * The binary format is big-endian: int magic "DVEL", int number of edges, then source, destination
+ * and cost of every edge as ints.
+ *
+ * Parameters: "linkable" the Linkable protocol, "file" the edge list, "format" text (default) or binary,
+ * "undir" flag to add every edge to both ends' Linkables, "parallelism" number of parser threads
+ * (defaults to the number of available processors), "outf" optional file to write the edges to
+ * in the binary format. Node IDs must be below network.size. A repeated edge takes the last cost.
+ * Link costs are symmetric, so an edge given in both directions must have the same cost both ways,
+ * otherwise the file is rejected naming the two lines.
+ */
+public class EdgeListLoader implements Control {
+
+    private static final String PAR_LINKABLE = "linkable";
+    private static final String PAR_FILE = "file";
+    private static final String PAR_FORMAT = "format";
+    private static final String PAR_UNDIR = "undir";
+    private static final String PAR_PARALLELISM = "parallelism";
+    private static final String PAR_FILEPATH = "outf";
+    /* "DVEL" */
+    private static final int MAGIC = 0x4456454C;
+    /* Smallest text chunk given to a parser thread */
+    private static final long CHUNK = 1 << 20;
+    /* Largest file region mapped at once */
+    private static final long REGION = 1L << 30;
+
+    private final String prefix;            //configuration prefix, for error messages
+    private final int pid;                  //Linkable protocol ID
+    private final String file;              //edge list file
+    private final boolean binary;           //binary instead of text
+    private final boolean undir;            //add edges in both directions
+    private final int parallelism;          //parser threads
+    private final String outf;              //binary copy, null for none
+
+    /**
+     * A constructor
+     *
+     * @param prefix a string provided by PeerSim and used to access parameters from the configuration file.
+     */
+    public EdgeListLoader(String prefix) {
+        this.prefix = prefix;
+        this.pid = Configuration.getPid(prefix + "." + PAR_LINKABLE);
+        this.file = Configuration.getString(prefix + "." + PAR_FILE);
+        String format = Configuration.getString(prefix + "." + PAR_FORMAT, "text");
+        if (!format.equals("text") && !format.equals("binary")) {
+            throw new IllegalParameterException(prefix + "." + PAR_FORMAT, "Unknown format " + format);
+        }
+        this.binary = format.equals("binary");
+        this.undir = Configuration.contains(prefix + "." + PAR_UNDIR);
+        this.parallelism = Math.max(1, Configuration.getInt(prefix + "." + PAR_PARALLELISM,
+                Runtime.getRuntime().availableProcessors()));
+        this.outf = Configuration.getString(prefix + "." + PAR_FILEPATH, null);
+    }
+
+    /**
+     * Implementation of the common method. This method is called once at simulation start time.
+     */
+    @Override
+    public boolean execute() {
+        long start = System.nanoTime();
+        EdgeList edges;
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            edges = binary ? readBinary(channel) : readText(channel);
+        } catch (IOException | IllegalArgumentException e) {
+            /* Failures in parser threads come back wrapped */
+            Throwable cause = e.getCause() instanceof IllegalArgumentException ? e.getCause() : e;
+            throw new IllegalParameterException(prefix + "." + PAR_FILE, cause.getMessage());
+        }
+        int size = Network.size();
+        int m = edges.size();
+        int[] src = edges.sources(), dst = edges.destinations(), cost = edges.costs();
+        for (int e = 0; e < m; e++) {
+            if (src[e] >= size || dst[e] >= size) {
+                throw new IllegalParameterException(prefix + "." + PAR_FILE,
+                        "Node " + Math.max(src[e], dst[e]) + " is not below network.size " + size);
+            }
+        }
+        /* Wire the Linkables */
+        for (int e = 0; e < m; e++) {
+            if (src[e] == dst[e]) {
+                continue;
+            }
+            ((Linkable) Network.get(src[e]).getProtocol(pid)).addNeighbor(Network.get(dst[e]));
+            if (undir) {
+                ((Linkable) Network.get(dst[e]).getProtocol(pid)).addNeighbor(Network.get(src[e]));
+            }
+        }
+        /* Fill the cost store one direction at a time, remembering the edge that set each */
+        CostStore store = CostStore.build(size, src, dst, m);
+        int[] setBy = new int[store.links()];
+        Arrays.fill(setBy, -1);
+        for (int e = 0; e < m; e++) {
+            if (src[e] != dst[e]) {
+                int k = store.index(src[e], dst[e]);
+                store.setCost(k, cost[e]);
+                setBy[k] = e;
+            }
+        }
+        /* A link given one way costs the same the other way, one given both ways must agree */
+        for (int e = 0; e < m; e++) {
+            if (src[e] == dst[e] || setBy[store.index(src[e], dst[e])] != e) {
+                continue;
+            }
+            int reverse = store.index(dst[e], src[e]);
+            if (setBy[reverse] < 0) {
+                store.setCost(reverse, cost[e]);
+            } else if (cost[setBy[reverse]] != cost[e]) {
+                throw new IllegalParameterException(prefix + "." + PAR_FILE, "Link " + src[e] + "-" + dst[e]
+                        + " costs " + cost[e] + " on " + locate(e) + " but " + cost[setBy[reverse]]
+                        + " the other way on " + locate(setBy[reverse]) + ", costs must be symmetric");
+            }
+        }
+        CostInitialiser.setStore(store);
+        if (outf != null) {
+            try {
+                writeBinary(edges);
+            } catch (IOException e) {
+                throw new IllegalParameterException(prefix + "." + PAR_FILEPATH, e.getMessage());
+            }
+        }
+        System.out.println("EdgeListLoader: " + m + " edges from " + file + " in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        return false;
+    }
+
+    /**
+     * Finds an edge in the file again, for error messages. Parse errors would have been reported already,
+     * so a text line holds an edge if it starts with a digit after any separators.
+     *
+     * @param edge position of the edge in the file.
+     * @return "line N" in a text file, or "edge N" in a binary file
+     */
+    private String locate(int edge) {
+        if (!binary) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16)) {
+                int line = 1, edges = 0;
+                boolean start = true;           //nothing but separators yet on the line
+                for (int b = in.read(); b >= 0; b = in.read()) {
+                    if (b == '\n') {
+                        line++;
+                        start = true;
+                    } else if (start && b >= '0' && b <= '9') {
+                        if (edges++ == edge) {
+                            return "line " + line;
+                        }
+                        start = false;
+                    } else if (start && b != ' ' && b != '\t' && b != ',' && b != '\r') {
+                        start = false;
+                    }
+                }
+            } catch (IOException e) {
+                /* Fall back to the position */
+            }
+        }
+        return "edge " + edge;
+    }
+
+    /**
+     * Parses a text edge list, one chunk of lines per task.
+     */
+    private EdgeList readText(FileChannel channel) throws IOException {
+        long length = channel.size();
+        int chunks = (int) Math.max(Math.min(length / CHUNK, 4L * parallelism), (length + REGION - 1) / REGION);
+        chunks = Math.max(1, chunks);
+        /* Chunk bounds moved to the start of the next line */
+        long[] bounds = new long[chunks + 1];
+        bounds[chunks] = length;
+        ByteBuffer probe = ByteBuffer.allocate(256);
+        for (int c = 1; c < chunks; c++) {
+            long pos = Math.max(bounds[c - 1], length / chunks * c);
+            bounds[c] = lineStart(channel, pos, probe);
+        }
+        EdgeList[] parts = new EdgeList[chunks];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new Parse(channel, bounds, parts, 0, chunks));
+        } finally {
+            pool.shutdown();
+        }
+        int m = 0;
+        for (EdgeList part : parts) {
+            m += part.size();
+        }
+        EdgeList edges = new EdgeList(m);
+        for (EdgeList part : parts) {
+            for (int e = 0; e < part.size(); e++) {
+                edges.add(part.source(e), part.destination(e), part.cost(e));
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * @return position after the first line break at or after pos, or the file length
+     */
+    private static long lineStart(FileChannel channel, long pos, ByteBuffer probe) throws IOException {
+        long length = channel.size();
+        while (pos < length) {
+            probe.clear();
+            int n = channel.read(probe, pos);
+            for (int k = 0; k < n; k++) {
+                if (probe.get(k) == '\n') {
+                    return pos + k + 1;
+                }
+            }
+            pos += Math.max(n, 0);
+        }
+        return length;
+    }
+
+    /**
+     * Parses a range of chunks, splitting it in halves while it holds more than one chunk.
+     */
+    private static class Parse extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final FileChannel channel;
+        private final long[] bounds;
+        private final EdgeList[] parts;
+        private final int from, to;
+
+        Parse(FileChannel channel, long[] bounds, EdgeList[] parts, int from, int to) {
+            this.channel = channel;
+            this.bounds = bounds;
+            this.parts = parts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Parse(channel, bounds, parts, from, mid), new Parse(channel, bounds, parts, mid, to));
+                return;
+            }
+            try {
+                parts[from] = parseChunk(channel, bounds[from], bounds[from + 1]);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Parses the lines of one chunk.
+     *
+     * @param channel the edge list.
+     * @param from first byte of the chunk, at a line start.
+     * @param to byte after the chunk, at a line start or the end of the file.
+     * @return the chunk's edges
+     */
+    private static EdgeList parseChunk(FileChannel channel, long from, long to) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        EdgeList edges = new EdgeList((int) ((to - from) / 16));
+        int[] field = new int[3];
+        int fields = 0;
+        long value = -1;                    //number being read, -1 between numbers
+        boolean comment = false;            //rest of the line is ignored
+        while (true) {
+            int b = buffer.hasRemaining() ? buffer.get() : '\n';
+            if (b == '\n') {
+                if (value >= 0) {
+                    if (fields == 3) {
+                        throw new IllegalArgumentException("More than three fields at byte " + (from + buffer.position()));
+                    }
+                    field[fields++] = (int) value;
+                }
+                if (fields == 1) {
+                    throw new IllegalArgumentException("Edge without destination at byte " + (from + buffer.position()));
+                }
+                if (fields > 1) {
+                    edges.add(field[0], field[1], fields == 3 ? field[2] : 1);
+                }
+                fields = 0;
+                value = -1;
+                comment = false;
+                if (!buffer.hasRemaining()) {
+                    return edges;
+                }
+            } else if (comment) {
+                continue;
+            } else if (b >= '0' && b <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (b - '0');
+                if (value >= Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Number too large at byte " + (from + buffer.position()));
+                }
+            } else if (b == ' ' || b == '\t' || b == ',' || b == '\r') {
+                if (value >= 0) {
+                    if (fields == 3) {
+                        throw new IllegalArgumentException("More than three fields at byte " + (from + buffer.position()));
+                    }
+                    field[fields++] = (int) value;
+                    value = -1;
+                }
+            } else if ((b == '#' || b == '%') && fields == 0 && value < 0) {
+                comment = true;
+            } else {
+                throw new IllegalArgumentException("Unexpected character '" + (char) b + "' at byte "
+                        + (from + buffer.position()));
+            }
+        }
+    }
+
+    /**
+     * Reads a binary edge list region by region.
+     */
+    private static EdgeList readBinary(FileChannel channel) throws IOException {
+        if (channel.size() < 8) {
+            throw new IllegalArgumentException("Not a binary edge list");
+        }
+        IntBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, 8).asIntBuffer();
+        int magic = header.get(), m = header.get();
+        if (magic != MAGIC || m < 0 || channel.size() != 8 + 12L * m) {
+            throw new IllegalArgumentException("Not a binary edge list");
+        }
+        EdgeList edges = new EdgeList(m);
+        long perRegion = REGION / 12;
+        for (long first = 0; first < m; first += perRegion) {
+            int count = (int) Math.min(perRegion, m - first);
+            IntBuffer ints = channel.map(FileChannel.MapMode.READ_ONLY, 8 + 12 * first, 12L * count).asIntBuffer();
+            for (int e = 0; e < count; e++) {
+                edges.add(ints.get(), ints.get(), ints.get());
+            }
+        }
+        for (int e = 0; e < m; e++) {
+            if (edges.source(e) < 0 || edges.destination(e) < 0 || edges.cost(e) < 0
+                    || edges.cost(e) == Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Bad edge " + e);
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * Writes the edges in the binary format.
+     */
+    private void writeBinary(EdgeList edges) throws IOException {
+        try (FileChannel channel = new FileOutputStream(outf).getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+            buffer.putInt(MAGIC).putInt(edges.size());
+            for (int e = 0; e < edges.size(); e++) {
+                if (buffer.remaining() < 12) {
+                    drain(channel, buffer);
+                }
+                buffer.putInt(edges.source(e)).putInt(edges.destination(e)).putInt(edges.cost(e));
+            }
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
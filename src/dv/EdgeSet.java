@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Arrays;
+
+/**
+ * The class implements a set of directed edges keyed by their (source, destination) pair.
+ * Both node IDs are packed into a single long and stored in a primitive open-addressing
+ * table with linear probing, so membership tests and inserts are O(1) without boxing.
+ * Each edge also remembers its insertion position, so the set can index a parallel edge list.
+ */
+public class EdgeSet {
+
+    /* Marks an unused slot (no valid edge packs to this value) */
+    private static final long EMPTY = -1L;
+    /* Maximum fill ratio before the table is doubled */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /* Packed edge keys */
+    private long[] keys;
+    /* Insertion position per slot */
+    private int[] order;
+    /* Number of edges in the set */
+    private int size;
+    /* Resize threshold */
+    private int threshold;
+
+    /**
+     * A constructor.
+     *
+     * @param expected expected number of edges.
+     */
+    public EdgeSet(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Packs an edge into a single key.
+     *
+     * @param source source node ID.
+     * @param destination destination node ID.
+     * @return the packed key
+     */
+    public static long key(long source, long destination) {
+        return (source << 32) | (destination & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Adds an edge to the set.
+     *
+     * @param source source node ID.
+     * @param destination destination node ID.
+     * @return true if the edge was not already present
+     */
+    public boolean add(long source, long destination) {
+        long key = key(source, destination);
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        /* Probe until the key or a free slot is found */
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        order[slot] = size;
+        if (++size > threshold) {
+            rehash();
+        }
+        return true;
+    }
+
+    /**
+     * Tests whether an edge is in the set.
+     *
+     * @param source source node ID.
+     * @param destination destination node ID.
+     * @return true if the edge is present
+     */
+    public boolean contains(long source, long destination) {
+        return indexOf(source, destination) >= 0;
+    }
+
+    /**
+     * Position of an edge in insertion order.
+     *
+     * @param source source node ID.
+     * @param destination destination node ID.
+     * @return number of edges added before it, or -1 if the edge is not in the set
+     */
+    public int indexOf(long source, long destination) {
+        long key = key(source, destination);
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return order[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return number of edges in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Doubles the table and re-inserts every key.
+     */
+    private void rehash() {
+        long[] old = keys;
+        int[] oldOrder = order;
+        allocate(old.length << 1);
+        int mask = keys.length - 1;
+        for (int i = 0; i < old.length; i++) {
+            long key = old[i];
+            if (key == EMPTY) {
+                continue;
+            }
+            int slot = mix(key) & mask;
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            order[slot] = oldOrder[i];
+        }
+    }
+
+    /**
+     * Allocates an empty table.
+     *
+     * @param capacity table length, a power of two.
+     */
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        order = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Spreads the bits of a packed key so that both node IDs affect the slot.
+     *
+     * @param key packed key.
+     * @return the mixed hash
+     */
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
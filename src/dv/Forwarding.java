@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Network;
+
+/**
+ * The control is a forwarding plane for the routes of DistanceVectorProtocol. Each time it runs it draws
+ * "flows" flows of one unit of traffic from a traffic matrix, forwards every flow hop by hop over the nodes'
+ * next hops, and adds it to the load of each link it takes. A flow is dropped when a node has no route,
+ * the next hop is not a live neighbour, or the flow loops.
+ *
+ * The matrix is "uniform" (random pairs), "gravity" (sources and destinations in proportion to their degree)
+ * or "hotspot" (a "hot" share of the flows goes to one of "hotspots" nodes picked at start). A link's capacity
+ * is "bandwidth" divided by its cost, as with reference bandwidths. Next hops come from the table, from the
+ * equal-cost next hops when the protocol keeps them, a flow hash picking one, or from the area tables.
+ *
+ * One CSV line is printed per execution: the cycle, the flows drawn, delivered and dropped, the largest and
+ * mean link utilisation, the links over capacity, the traffic the network carries within capacity (the
+ * delivered flows scaled down by the largest utilisation above one), and the mean and largest stretch
+ * of the delivered flows against shortest paths over the whole network.
+ *
+ * Flows are drawn into primitive arrays and forwarded per source node, from a random sequence of their own,
+ * with the sources split among "parallelism" threads. Running tasks add to link loads of their own, which are
+ * summed at the end, so the result does not depend on the number of threads.
+ *
+ * Parameters: "protocol" the DistanceVectorProtocol, "flows" flows per execution (default 100000), "matrix"
+ * (default uniform), "hot" (default 0.5), "hotspots" (default 1), "bandwidth" (default 1000), "stretch" flag
+ * to measure stretch, which costs a shortest path search per source, "parallelism" number of worker threads
+ * (defaults to the number of available processors).
+ */
+public class Forwarding implements Control {
+
+    private static final String PAR_PROT = "protocol";
+    private static final String PAR_FLOWS = "flows";
+    private static final String PAR_MATRIX = "matrix";
+    private static final String PAR_HOT = "hot";
+    private static final String PAR_HOTSPOTS = "hotspots";
+    private static final String PAR_BANDWIDTH = "bandwidth";
+    private static final String PAR_STRETCH = "stretch";
+    private static final String PAR_PARALLELISM = "parallelism";
+    /* Sources forwarded by one task without further splitting */
+    private static final int BATCH = 16;
+
+    /* Enumerated traffic matrices */
+    private enum Matrix {
+        UNIFORM, GRAVITY, HOTSPOT
+    }
+
+    private final int pid;                  //DistanceVectorProtocol protocol ID
+    private final long flows;               //flows per execution
+    private final Matrix matrix;            //traffic matrix
+    private final double hot;               //share of flows to hotspots
+    private final int hotspotCount;         //number of hotspots
+    private final double bandwidth;         //capacity of a link of cost 1
+    private final boolean stretch;          //measure stretch
+    private final ForkJoinPool pool;        //worker threads
+    private int[] hotspots;                 //hotspot node IDs, picked on first execution
+    private boolean header;                 //CSV header written
+
+    /**
+     * A constructor
+     *
+     * @param prefix a string provided by PeerSim and used to access parameters from the configuration file.
+     */
+    public Forwarding(String prefix) {
+        this.pid = Configuration.getPid(prefix + "." + PAR_PROT);
+        this.flows = Configuration.getLong(prefix + "." + PAR_FLOWS, 100000);
+        if (flows < 0) {
+            throw new IllegalParameterException(prefix + "." + PAR_FLOWS, "Must not be negative");
+        }
+        String name = Configuration.getString(prefix + "." + PAR_MATRIX, "uniform");
+        try {
+            this.matrix = Matrix.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalParameterException(prefix + "." + PAR_MATRIX, "Unknown matrix " + name);
+        }
+        this.hot = Configuration.getDouble(prefix + "." + PAR_HOT, 0.5);
+        if (hot < 0 || hot > 1) {
+            throw new IllegalParameterException(prefix + "." + PAR_HOT, "Must be between 0 and 1");
+        }
+        this.hotspotCount = Configuration.getInt(prefix + "." + PAR_HOTSPOTS, 1);
+        if (hotspotCount < 1) {
+            throw new IllegalParameterException(prefix + "." + PAR_HOTSPOTS, "Must be positive");
+        }
+        this.bandwidth = Configuration.getDouble(prefix + "." + PAR_BANDWIDTH, 1000);
+        if (bandwidth <= 0) {
+            throw new IllegalParameterException(prefix + "." + PAR_BANDWIDTH, "Must be positive");
+        }
+        this.stretch = Configuration.contains(prefix + "." + PAR_STRETCH);
+        int parallelism = Configuration.getInt(prefix + "." + PAR_PARALLELISM,
+                Runtime.getRuntime().availableProcessors());
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    /**
+     * Implementation of the common method. This method is called in each cycle.
+     */
+    @Override
+    public boolean execute() {
+        int n = Network.size();
+        CostStore store = CostInitialiser.getStore();
+        if (n < 2 || store == null) {
+            return false;
+        }
+        if (hotspots == null && matrix == Matrix.HOTSPOT) {
+            hotspots = new int[Math.min(hotspotCount, n)];
+            for (int h = 0; h < hotspots.length; h++) {
+                hotspots[h] = CommonState.r.nextInt(n);
+            }
+        }
+        Plane plane = new Plane(n, store);
+        for (int i = 0; i < n; i++) {
+            plane.up[i] = Network.get(i).isUp();
+            DistanceVectorProtocol protocol = (DistanceVectorProtocol) Network.get(i).getProtocol(pid);
+            if (plane.up[i]) {
+                plane.next[i] = protocol.getNextHops();
+                plane.multipath[i] = protocol.getMultipath();
+                plane.areas[i] = protocol.getAreaTable();
+            }
+            /* Gravity weighs nodes by degree, the other matrices equally */
+            long weight = matrix == Matrix.GRAVITY ? store.degree(i) : 1;
+            plane.weight[i + 1] = plane.weight[i] + weight;
+            plane.sources[i + 1] = plane.sources[i] + (plane.up[i] ? weight : 0);
+        }
+        if (plane.sources[n] == 0) {
+            return false;
+        }
+        /* One draw, so that the rest of the simulation sees the same random sequence whatever the load */
+        plane.seed = CommonState.r.nextLong();
+        pool.invoke(new Batch(plane, 0, n));
+        /* Merge the threads' loads and the sources' results in a fixed order */
+        long[] load = new long[store.links()];
+        for (long[] part : plane.loads) {
+            if (part != null) {
+                for (int k = 0; k < load.length; k++) {
+                    load[k] += part[k];
+                }
+            }
+        }
+        long delivered = 0, dropped = 0, stretched = 0;
+        double sum = 0, max = 0;
+        for (int s = 0; s < n; s++) {
+            delivered += plane.delivered[s];
+            dropped += plane.dropped[s];
+            sum += plane.stretch[s];
+            stretched += plane.measured[s];
+            max = Math.max(max, plane.maxStretch[s]);
+        }
+        double maxUse = 0, totalUse = 0;
+        int links = 0, overloaded = 0;
+        for (int k = 0; k < load.length; k++) {
+            int c = store.cost(k);
+            if (c == CostStore.NO_LINK) {
+                continue;
+            }
+            double use = load[k] * (double) c / bandwidth;
+            maxUse = Math.max(maxUse, use);
+            totalUse += use;
+            links++;
+            if (use > 1) {
+                overloaded++;
+            }
+        }
+        if (!header) {
+            System.out.println("cycle,flows,delivered,dropped,max_utilisation,mean_utilisation,overloaded_links,"
+                    + "throughput,mean_stretch,max_stretch");
+            header = true;
+        }
+        System.out.println(String.format(Locale.ROOT, "%d,%d,%d,%d,%.4f,%.4f,%d,%.1f,%.4f,%.4f",
+                CommonState.getTime(), flows, delivered, dropped, maxUse, links > 0 ? totalUse / links : 0, overloaded,
+                delivered / Math.max(1, maxUse), stretched > 0 ? sum / stretched : 0, max));
+        return false;
+    }
+
+    /**
+     * The state of one execution: the routes of every node, the matrix, and the results per source.
+     */
+    private final class Plane {
+
+        final int n;                            //number of nodes
+        final CostStore store;                  //link costs
+        final boolean[] up;                     //node is up
+        final int[][] next;                     //next hop rows, null where there are none
+        final Multipath[] multipath;            //equal-cost next hops, null where there are none
+        final AreaTable[] areas;                //area tables, null outside area mode
+        final AreaMap map;                      //area partition, null outside area mode
+        final long[] weight;                    //cumulative destination weights, n+1 entries
+        final long[] sources;                   //cumulative source weights of live nodes, n+1 entries
+        final long[] delivered;                 //flows delivered per source
+        final long[] dropped;                   //flows dropped per source
+        final double[] stretch;                 //sum of stretch of delivered flows per source
+        final long[] measured;                  //delivered flows whose stretch was measured per source
+        final double[] maxStretch;              //largest stretch per source
+        final int[] offset, adj, dst, cost;     //adjacency for the shortest path searches
+        final List<long[]> loads;               //link loads, one array per task running at a time
+        final ArrayDeque<long[]> idle;          //link loads no task is adding to
+        long seed;                              //seed of this execution's flows
+
+        Plane(int n, CostStore store) {
+            this.n = n;
+            this.store = store;
+            this.up = new boolean[n];
+            this.next = new int[n][];
+            this.multipath = new Multipath[n];
+            this.areas = new AreaTable[n];
+            this.map = AreaInitialiser.getMap();
+            this.weight = new long[n + 1];
+            this.sources = new long[n + 1];
+            this.delivered = new long[n];
+            this.dropped = new long[n];
+            this.stretch = new double[n];
+            this.measured = new long[n];
+            this.maxStretch = new double[n];
+            this.loads = new ArrayList<>();
+            this.idle = new ArrayDeque<>();
+            if (Forwarding.this.stretch) {
+                /* The cost store's rows serve as the adjacency of the searches */
+                offset = new int[n + 1];
+                adj = new int[store.links()];
+                dst = new int[adj.length];
+                cost = new int[adj.length];
+                for (int i = 0; i < n; i++) {
+                    offset[i] = store.start(i);
+                    for (int e = store.start(i); e < store.end(i); e++) {
+                        adj[e] = e;
+                        dst[e] = store.neighbour(e);
+                        cost[e] = store.cost(e);
+                    }
+                }
+                offset[n] = store.end(n - 1);
+            } else {
+                offset = adj = dst = cost = null;
+            }
+        }
+    }
+
+    /**
+     * Forwards the flows of a range of sources, splitting it in halves while it is larger than a batch.
+     */
+    private final class Batch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final Plane plane;
+        private final int from, to;
+
+        Batch(Plane plane, int from, int to) {
+            this.plane = plane;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BATCH) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Batch(plane, from, mid), new Batch(plane, mid, to));
+                return;
+            }
+            long[] load = acquire();
+            int[] dist = plane.offset != null ? new int[plane.n] : null;
+            int[] pred = plane.offset != null ? new int[plane.n] : null;
+            int[] destinations = new int[0];
+            int[] labels = new int[0];
+            for (int s = from; s < to; s++) {
+                /* The source's share of the flows, rounded so that the shares add up */
+                long total = plane.sources[plane.n];
+                int count = (int) (flows * plane.sources[s + 1] / total - flows * plane.sources[s] / total);
+                if (count == 0) {
+                    continue;
+                }
+                if (destinations.length < count) {
+                    destinations = new int[count];
+                    labels = new int[count];
+                }
+                SplittableRandom random = new SplittableRandom(plane.seed ^ (s * 0x9E3779B97F4A7C15L));
+                for (int f = 0; f < count; f++) {
+                    destinations[f] = destination(plane, s, random);
+                    labels[f] = random.nextInt();
+                }
+                if (dist != null) {
+                    Dijkstra.search(s, plane.n, plane.offset, plane.adj, plane.dst, plane.cost, dist, pred);
+                }
+                for (int f = 0; f < count; f++) {
+                    forward(plane, load, s, destinations[f], labels[f], dist);
+                }
+            }
+            synchronized (plane.idle) {
+                plane.idle.push(load);
+            }
+        }
+
+        /**
+         * Takes link loads no other task is adding to, so that tasks add to them without locking.
+         */
+        private long[] acquire() {
+            synchronized (plane.idle) {
+                long[] load = plane.idle.poll();
+                if (load == null) {
+                    load = new long[plane.store.links()];
+                    plane.loads.add(load);
+                }
+                return load;
+            }
+        }
+
+        /**
+         * Forwards one flow hop by hop and records its outcome under its source.
+         */
+        private void forward(Plane plane, long[] load, int s, int d, int label, int[] dist) {
+            long walked = 0;
+            for (int x = s, hops = 0; x != d; hops++) {
+                int next = hops == plane.n ? -1 : nextHop(plane, x, d, label);
+                int k = next < 0 || !plane.up[next] ? -1 : plane.store.index(x, next);
+                if (k < 0 || plane.store.cost(k) == CostStore.NO_LINK) {
+                    plane.dropped[s]++;
+                    return;
+                }
+                load[k]++;
+                walked += plane.store.cost(k);
+                x = next;
+            }
+            plane.delivered[s]++;
+            if (dist != null && dist[d] != DistanceVector.INFINITY && dist[d] > 0) {
+                double ratio = (double) walked / dist[d];
+                plane.stretch[s] += ratio;
+                plane.measured[s]++;
+                plane.maxStretch[s] = Math.max(plane.maxStretch[s], ratio);
+            }
+        }
+    }
+
+    /**
+     * @return the next hop of a flow at a node, -1 if the node has no route
+     */
+    private static int nextHop(Plane plane, int x, int d, int label) {
+        if (plane.multipath[x] != null) {
+            return plane.multipath[x].nextHop(d, label);
+        }
+        if (plane.next[x] != null) {
+            return plane.next[x][d];
+        }
+        if (plane.areas[x] != null && plane.map != null) {
+            return plane.areas[x].nextHop(d, plane.map);
+        }
+        return -1;
+    }
+
+    /**
+     * Draws the destination of a flow from a source.
+     */
+    private int destination(Plane plane, int s, SplittableRandom random) {
+        int n = plane.n;
+        if (matrix == Matrix.HOTSPOT && random.nextDouble() < hot) {
+            int d = hotspots[random.nextInt(hotspots.length)];
+            if (d != s) {
+                return d;
+            }
+        } else if (matrix == Matrix.GRAVITY) {
+            long total = plane.weight[n];
+            /* A few tries, then a uniform pick, for a source that holds most of the weight */
+            for (int tries = 0; total > 0 && tries < 8; tries++) {
+                long u = random.nextLong(total);
+                int d = Arrays.binarySearch(plane.weight, u);
+                /* The node whose range [weight[d], weight[d+1]) holds u */
+                d = d >= 0 ? d : -d - 2;
+                while (plane.weight[d + 1] == plane.weight[d]) {
+                    d++;
+                }
+                if (d != s) {
+                    return d;
+                }
+            }
+        }
+        int d = random.nextInt(n - 1);
+        return d >= s ? d + 1 : d;
+    }
+}
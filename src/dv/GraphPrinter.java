@@ -1,43 +1,71 @@
 /*
- * Copyright (c) 2018, 
+ * Copyright (c) 2018,
  *     University of Reading, Computer science Department
  *     CS2CA17 module - lab sessions
  * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
  * Lesser General Public License version 2 as published by the Free Software Foundation.
  *
- * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; 
- * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. 
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
  * See the GNU Lesser General Public License for more details.
  */
 package dv;
 
-import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.Formatter;
 
 import peersim.config.Configuration;
 import peersim.config.FastConfig;
+import peersim.config.IllegalParameterException;
 import peersim.core.CommonState;
 import peersim.core.Linkable;
 import peersim.core.Network;
+import peersim.core.Node;
 import peersim.reports.GraphObserver;
 
 /**
  * The control class extends the functionality of peersim.reports.GraphObserver to DistanceVectorProtocol protocol.
  * The class prints nodes and edge costs into out file using DOT language.
+ * Edges are streamed through one buffered file channel; an undirected edge is drawn once, from its lower ID end
+ * when both ends link to each other.
+ *
+ * Optional parameters: "format" dot (default) or graphml, "diff" flag to write a single file, outf + "diff.graph",
+ * holding the DOT graph of the first cycle with, for every later cycle, a subgraph "cycle_N" of the edges that
+ * are new or whose label changed, and the edges gone since the previous cycle marked [removed=true].
+ * Edges are matched by their end nodes. The file is closed after every cycle, and each cycle's subgraph
+ * is written over the closing brace and followed by a new one, so the file is valid DOT between cycles.
  * PREREQUISITE, must be used for DistanceVectorProtocol protocol in PeerSim.
  * @author M. Ayiad
  * @version 1.0 
  * March 2018
  */
 public class GraphPrinter extends GraphObserver {
-	
-	private static final String PAR_PROT = "protocol";	
+
+	private static final String PAR_PROT = "protocol";
     private static final String PAR_FILEPATH = "outf";
+	private static final String PAR_FORMAT = "format";
+	private static final String PAR_DIFF = "diff";
+	private static final int BUFFER = 1 << 16;							//output buffer size in bytes
+	private static final String CLOSE = " }\n";							//end of the diff file's graph
+
 
-	
 	private final int pid;
     private String outf;
+	private final boolean graphml;										//GraphML instead of DOT
+	private final boolean diff;											//single file of per-cycle changes
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);	//output buffer
+	private final StringBuilder line = new StringBuilder(128);			//line being written
+	private FileChannel channel;										//current output file
+	private EdgeSet drawn;												//edges drawn in the previous cycle, null before the first
+	private long[] drawnKeys = new long[0];								//their keys, by position in drawn
+	private int[] drawnLabels = new int[0];								//their labels, by position in drawn
+	private int drawnCount;												//number of edges drawn
 	/**
 	 * A constructor
 	 * @param prefix a string provided by PeerSim and used to access parameters from the configuration file.
@@ -46,58 +74,172 @@ public class GraphPrinter extends GraphObserver {
 		super(prefix);
 		pid  = Configuration.getPid(prefix + "." + PAR_PROT);
 		outf = Configuration.getString(prefix + "." + PAR_FILEPATH);
+		String format = Configuration.getString(prefix + "." + PAR_FORMAT, "dot");
+		if(!format.equals("dot") && !format.equals("graphml"))
+			throw new IllegalParameterException(prefix + "." + PAR_FORMAT, "Unknown format " + format);
+		graphml = format.equals("graphml");
+		diff = Configuration.contains(prefix + "." + PAR_DIFF);
+		if(diff && graphml)
+			throw new IllegalParameterException(prefix + "." + PAR_DIFF, "Only supported with the dot format");
 	}
-	
+
 	/**
-	 * Implementation of the common method. This method is called in each cycle. 
+	 * Implementation of the common method. This method is called in each cycle.
 	 */
 	@Override
 	public boolean execute() {
 		final int n = Network.size();
-        int l=0, m = 0;
         System.out.println( "[" + CommonState.getTime() + "] drawing ... ");
         try {
-            int[] drawn = new int[n];
-            Date date = new Date(System.currentTimeMillis());
-            String filename = String.format("%s%03d.graph", outf, CommonState.getTime() );
-            Formatter file = new Formatter(new File(filename));
-            if(undir)
-                //file.format("// M. Ayiad, %s \ngraph random { size=\"11.69,16.53!\"; ratio=\"fill\"; margin=0; dpi=300; \n", date.toString());
-            	file.format("// M. Ayiad, %s \ngraph random { ratio=\"fill\"; margin=0; \n", date.toString());
-            else
-                //file.format("// M. Ayiad, %s \ndigraph random { size=\"11.69,16.53!\"; ratio=\"fill\"; margin=0; dpi=300; \n", date.toString());
-            	file.format("// M. Ayiad, %s \ngraph random { ratio=\"fill\"; margin=0; \n", date.toString());
+            boolean first = drawn == null;
+            String filename = diff ? outf + "diff.graph"
+                    : String.format("%s%03d%s", outf, CommonState.getTime(), graphml ? ".graphml" : ".graph");
+            if(diff && !first) {
+                /* The cycle goes over the closing brace of the graph */
+                channel = FileChannel.open(Paths.get(filename), StandardOpenOption.WRITE);
+                channel.position(channel.size() - CLOSE.length());
+            } else {
+                channel = new FileOutputStream(filename).getChannel();
+            }
+            if(graphml) header(n);
+            else if(!diff || first) {
+                Date date = new Date(System.currentTimeMillis());
+                write(line.append("// M. Ayiad, ").append(date).append(" \ngraph random { ratio=\"fill\"; margin=0; \n"));
+            } else {
+                write(line.append("   subgraph cycle_").append(CommonState.getTime()).append(" {\n"));
+            }
 
+            int count = 0;
+            EdgeSet current = diff ? new EdgeSet(drawnCount) : null;
+            long[] keys = diff ? new long[Math.max(16, drawnCount)] : null;
+            int[] labels = diff ? new int[keys.length] : null;
+            int linkable = FastConfig.getLinkable(pid);
             for (int i=0; i < n ; i++) {
 
-                DistanceVectorProtocol protocol = (DistanceVectorProtocol)Network.get(i).getProtocol(pid);
-            	Linkable link = (Linkable) Network.get(i).getProtocol(FastConfig.getLinkable(pid));
-            	                                
+                Node node = Network.get(i);
+                DistanceVectorProtocol protocol = (DistanceVectorProtocol)node.getProtocol(pid);
+            	Linkable link = (Linkable) node.getProtocol(linkable);
+                long nodeId = node.getID();
+                DistanceVector table = protocol.getTable();
+
                 for (int j = 0; j < link.degree(); j++) {
-                    long peerId = link.getNeighbor(j).getID();
+                    Node peer = link.getNeighbor(j);
+                    long peerId = peer.getID();
+                    if(undir && peerId < nodeId && ((Linkable) peer.getProtocol(linkable)).contains(node))
+                        continue;												//drawn from the peer's side
                     int cost = -1;
-                    if(protocol.getPaths()!=null && protocol.getPaths().containsKey(peerId))
-                    	cost = protocol.getPaths().get(peerId).cost; 
-                                    	
-                	if(undir) {
-                        m = 0;
-                        while (m < l && peerId != drawn[m]) m++;
-                        if (m < l) continue;
-                        file.format("   %d -- %d [dir=both, label=%d];\n", i, peerId, cost);
-                    }
-                    else{
-                        file.format("   %d -> %d;\n", i, peerId);
+                    if(table != null && peerId < table.size())
+                    	cost = table.cost[(int) peerId];
+
+                    if(diff) {
+                        /* An undirected edge is the same whichever end draws it */
+                        long source = undir ? Math.min(nodeId, peerId) : nodeId;
+                        long target = undir ? Math.max(nodeId, peerId) : peerId;
+                        if(current.add(source, target)) {
+                            if(count == keys.length) {
+                                keys = Arrays.copyOf(keys, count << 1);
+                                labels = Arrays.copyOf(labels, count << 1);
+                            }
+                            keys[count] = EdgeSet.key(source, target);
+                            labels[count] = cost;
+                            count++;
+                        }
+                        /* Only edges that are new or relabelled since the last cycle */
+                        int k = first ? -1 : drawn.indexOf(source, target);
+                        if(k >= 0 && drawnLabels[k] == cost) continue;
                     }
+                    edge(nodeId, peerId, cost);
                 }
-                drawn[l++] = (int)Network.get(i).getID();
             }
-            file.format(" }");
-            file.close();
+            if(diff) {
+                for(int k = 0; k < drawnCount; k++) {
+                    long source = drawnKeys[k] >>> 32, target = drawnKeys[k] & 0xFFFFFFFFL;
+                    if(!current.contains(source, target)) removal(source, target);
+                }
+                drawn = current;
+                drawnKeys = keys;
+                drawnLabels = labels;
+                drawnCount = count;
+            }
+            if(graphml) write(line.append("</graph>\n</graphml>\n"));
+            else if(!diff) write(line.append(" }"));
+            else if(first) write(line.append(CLOSE));
+            else write(line.append("   }\n").append(CLOSE));
+            drain();
 
         } catch (Exception ex) { ex.printStackTrace(); }
+        finally { close(); }
         System.out.println("done.");
-		
+
 		return false;
 	}
 
+	/**
+	 * Writes the GraphML header and the nodes.
+	 * @param n number of nodes.
+	 */
+	private void header(int n) throws IOException {
+		write(line.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+				.append("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">\n")
+				.append("<key id=\"cost\" for=\"edge\" attr.name=\"cost\" attr.type=\"int\"/>\n")
+				.append("<graph id=\"random\" edgedefault=\"").append(undir ? "undirected" : "directed").append("\">\n"));
+		for(int i=0; i < n; i++)
+			write(line.append("<node id=\"n").append(Network.get(i).getID()).append("\"/>\n"));
+	}
+
+	/**
+	 * Writes one edge.
+	 */
+	private void edge(long nodeId, long peerId, int cost) throws IOException {
+		if(graphml)
+			line.append("<edge source=\"n").append(nodeId).append("\" target=\"n").append(peerId)
+					.append("\"><data key=\"cost\">").append(cost).append("</data></edge>\n");
+		else if(undir)
+			line.append("   ").append(nodeId).append(" -- ").append(peerId)
+					.append(" [dir=both, label=").append(cost).append("];\n");
+		else
+			line.append("   ").append(nodeId).append(" -> ").append(peerId).append(";\n");
+		write(line);
+	}
+
+	/**
+	 * Writes an edge drawn in the previous cycle that is no longer in the network.
+	 */
+	private void removal(long nodeId, long peerId) throws IOException {
+		write(line.append("   ").append(nodeId).append(undir ? " -- " : " -> ").append(peerId)
+				.append(" [removed=true];\n"));
+	}
+
+	/**
+	 * Moves an ASCII line into the output buffer and clears it.
+	 */
+	private void write(StringBuilder text) throws IOException {
+		for(int k = 0; k < text.length(); k++) {
+			if(!buffer.hasRemaining()) drain();
+			buffer.put((byte) text.charAt(k));
+		}
+		text.setLength(0);
+	}
+
+	/**
+	 * Closes the current file after every cycle, dropping what a failed cycle left in the buffer.
+	 */
+	private void close() {
+		buffer.clear();
+		line.setLength(0);
+		if(channel == null) return;
+		try { channel.close(); }
+		catch (IOException ex) { ex.printStackTrace(); }
+		channel = null;
+	}
+
+	/**
+	 * Writes the output buffer to the current file.
+	 */
+	private void drain() throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()) channel.write(buffer);
+		buffer.clear();
+	}
+
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The class is a node's mailbox for the updates other nodes send it in a cycle. Any number of threads may
+ * post while the owner takes, without locks: there are two boxes, one for even and one for odd cycles,
+ * each a stack that senders push onto. In each cycle the owner empties the box of the previous cycle,
+ * which nobody posts to any more.
+ *
+ * Updates are taken by increasing sender ID, and in the order they were posted for one sender, so the order
+ * does not depend on which thread ran which sender first.
+ */
+final class Inbox {
+
+    /* Orders letters by sender, stable sorting keeps a sender's letters in order */
+    private static final Comparator<Letter> BY_SENDER = (a, b) -> Integer.compare(a.sender, b.sender);
+    /* Taken from an empty box */
+    private static final Object[] NONE = new Object[0];
+
+    /* An update on its way */
+    private static final class Letter {
+        final int sender;               //sender node ID
+        final Object update;            //the update
+        Letter next;                    //letter posted before
+
+        Letter(int sender, Object update) {
+            this.sender = sender;
+            this.update = update;
+        }
+    }
+
+    private final AtomicReference<Letter> even = new AtomicReference<>();  //letters of even cycles
+    private final AtomicReference<Letter> odd = new AtomicReference<>();   //letters of odd cycles
+
+    /**
+     * Posts an update, to be taken in the next cycle.
+     *
+     * @param cycle current cycle.
+     * @param sender sender node ID.
+     * @param update the update.
+     */
+    void post(long cycle, int sender, Object update) {
+        AtomicReference<Letter> box = (cycle & 1) == 0 ? even : odd;
+        Letter letter = new Letter(sender, update);
+        do {
+            letter.next = box.get();
+        } while (!box.compareAndSet(letter.next, letter));
+    }
+
+    /**
+     * Takes the updates posted in the previous cycle. Only called by the owner.
+     *
+     * @param cycle current cycle.
+     * @return the updates, by sender
+     */
+    Object[] take(long cycle) {
+        Letter head = ((cycle & 1) == 0 ? odd : even).getAndSet(null);
+        if (head == null) {
+            return NONE;
+        }
+        int count = 0;
+        for (Letter l = head; l != null; l = l.next) {
+            count++;
+        }
+        /* The stack holds the latest letter first */
+        Letter[] letters = new Letter[count];
+        for (Letter l = head; l != null; l = l.next) {
+            letters[--count] = l;
+        }
+        Arrays.sort(letters, BY_SENDER);
+        Object[] updates = new Object[letters.length];
+        for (int k = 0; k < letters.length; k++) {
+            updates[k] = letters[k].update;
+        }
+        return updates;
+    }
+
+    /**
+     * @return true if no updates are waiting
+     */
+    boolean isEmpty() {
+        return even.get() == null && odd.get() == null;
+    }
+
+    /**
+     * Drops the waiting updates.
+     */
+    void clear() {
+        even.set(null);
+        odd.set(null);
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The class finds the k cheapest loop-free paths between two nodes with Yen's algorithm.
+ * Each path after the first leaves an earlier one at some node, the spur, and the rest of it is the
+ * shortest path from the spur that uses neither the edges the earlier paths take from there nor any
+ * node before the spur. The cheapest of those candidates is the next path.
+ *
+ * Paths are returned packed in one int array: for each path in increasing cost, its cost, its number
+ * of nodes, then its node IDs from source to destination. Equal costs go to the path with fewer nodes,
+ * then to the lower node IDs.
+ */
+public final class KShortest {
+
+    private final int n;                //number of nodes
+    private final int[] offset;         //row starts, n+1 entries
+    private final int[] adj;            //edge indexes grouped by source
+    private final int[] dst;            //edge destination node IDs
+    private final int[] cost;           //edge costs, removed edges set to Integer.MAX_VALUE while searching
+    private final int[] dist;           //costs from the spur
+    private final int[] pred;           //predecessors from the spur
+    private int[] removed = new int[16];    //edges removed for the current spur
+    private int[] saved = new int[16];      //their costs
+    private int removedCount;               //number of removed edges
+
+    /**
+     * A constructor. The edges are copied, so the graph may change afterwards.
+     *
+     * @param n number of nodes.
+     * @param edges the graph.
+     */
+    public KShortest(int n, EdgeList edges) {
+        this.n = n;
+        this.offset = new int[n + 1];
+        this.adj = Dijkstra.adjacency(n, edges.sources(), edges.size(), 0, 0, offset);
+        this.dst = Arrays.copyOf(edges.destinations(), edges.size());
+        this.cost = Arrays.copyOf(edges.costs(), edges.size());
+        this.dist = new int[n];
+        this.pred = new int[n];
+    }
+
+    /**
+     * Finds up to k cheapest loop-free paths.
+     *
+     * @param source source node ID.
+     * @param destination destination node ID, not the source.
+     * @param k largest number of paths.
+     * @return the packed paths, empty if the destination is unreachable
+     */
+    public int[] paths(int source, int destination, int k) {
+        List<int[]> found = new ArrayList<>(k);
+        List<int[]> candidates = new ArrayList<>();
+        /* Each path is kept as its nodes followed by the cost to each of them */
+        int[] first = spur(source, destination, null, 0, 0);
+        if (first != null) {
+            found.add(first);
+        }
+        while (!found.isEmpty() && found.size() < k) {
+            int[] previous = found.get(found.size() - 1);
+            int length = previous.length >>> 1;
+            for (int i = 0; i < length - 1; i++) {
+                int spur = previous[i];
+                /* Edges earlier paths with the same root take from the spur */
+                for (int[] path : found) {
+                    if ((path.length >>> 1) > i + 1 && sameRoot(path, previous, i)) {
+                        cut(spur, path[i + 1]);
+                    }
+                }
+                /* Nodes of the root */
+                for (int j = 0; j < i; j++) {
+                    cutAll(previous[j]);
+                }
+                int[] candidate = spur(spur, destination, previous, i, previous[length + i]);
+                restore();
+                if (candidate != null && !contains(found, candidate) && !contains(candidates, candidate)) {
+                    candidates.add(candidate);
+                }
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+            int best = 0;
+            for (int c = 1; c < candidates.size(); c++) {
+                if (compare(candidates.get(c), candidates.get(best)) < 0) {
+                    best = c;
+                }
+            }
+            found.add(candidates.remove(best));
+        }
+        int size = 0;
+        for (int[] path : found) {
+            size += 2 + (path.length >>> 1);
+        }
+        int[] packed = new int[size];
+        int at = 0;
+        for (int[] path : found) {
+            int length = path.length >>> 1;
+            packed[at++] = path[2 * length - 1];
+            packed[at++] = length;
+            System.arraycopy(path, 0, packed, at, length);
+            at += length;
+        }
+        return packed;
+    }
+
+    /**
+     * @param packed paths returned by paths().
+     * @return number of paths
+     */
+    public static int count(int[] packed) {
+        int count = 0;
+        for (int at = 0; at < packed.length; at += 2 + packed[at + 1]) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Shortest path from a spur node, appended to the root of an earlier path.
+     *
+     * @param spur start of the search.
+     * @param destination destination node ID.
+     * @param root earlier path whose first i+1 nodes lead to the spur, null for none.
+     * @param i position of the spur in the root.
+     * @param rootCost cost of the root up to the spur.
+     * @return the path as its nodes followed by the cost to each, or null if the destination is unreachable
+     */
+    private int[] spur(int spur, int destination, int[] root, int i, int rootCost) {
+        Dijkstra.search(spur, n, offset, adj, dst, cost, dist, pred);
+        if (dist[destination] == DistanceVector.INFINITY) {
+            return null;
+        }
+        int hops = 0;
+        for (int x = destination; x != spur; hops++) {
+            x = pred[x] == x ? spur : pred[x];
+        }
+        int length = i + 1 + hops;
+        int[] path = new int[2 * length];
+        if (root != null) {
+            int rootLength = root.length >>> 1;
+            System.arraycopy(root, 0, path, 0, i + 1);
+            System.arraycopy(root, rootLength, path, length, i + 1);
+        } else {
+            path[0] = spur;
+        }
+        for (int x = destination, k = length - 1; x != spur; k--) {
+            path[k] = x;
+            path[length + k] = rootCost + dist[x];
+            x = pred[x] == x ? spur : pred[x];
+        }
+        return path;
+    }
+
+    /**
+     * @return true if two paths have the same first i+1 nodes
+     */
+    private static boolean sameRoot(int[] a, int[] b, int i) {
+        for (int j = 0; j <= i; j++) {
+            if (a[j] != b[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the edges from one node to another until restore().
+     */
+    private void cut(int s, int d) {
+        for (int k = offset[s]; k < offset[s + 1]; k++) {
+            if (dst[adj[k]] == d) {
+                remove(adj[k]);
+            }
+        }
+    }
+
+    /**
+     * Removes every edge leaving a node until restore(), so that no path passes through it.
+     */
+    private void cutAll(int s) {
+        for (int k = offset[s]; k < offset[s + 1]; k++) {
+            remove(adj[k]);
+        }
+    }
+
+    private void remove(int e) {
+        if (cost[e] == DistanceVector.INFINITY) {
+            return;
+        }
+        if (removedCount == removed.length) {
+            removed = Arrays.copyOf(removed, removedCount << 1);
+            saved = Arrays.copyOf(saved, removedCount << 1);
+        }
+        removed[removedCount] = e;
+        saved[removedCount++] = cost[e];
+        cost[e] = DistanceVector.INFINITY;
+    }
+
+    /**
+     * Puts back the removed edges.
+     */
+    private void restore() {
+        for (int r = 0; r < removedCount; r++) {
+            cost[removed[r]] = saved[r];
+        }
+        removedCount = 0;
+    }
+
+    /**
+     * @return true if the list holds a path with the same nodes
+     */
+    private static boolean contains(List<int[]> paths, int[] path) {
+        for (int[] other : paths) {
+            if (compare(other, path) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Orders paths by cost, then number of nodes, then node IDs.
+     */
+    private static int compare(int[] a, int[] b) {
+        int c = Integer.compare(a[a.length - 1], b[b.length - 1]);
+        if (c != 0) {
+            return c;
+        }
+        c = Integer.compare(a.length, b.length);
+        for (int j = 0; c == 0 && j < a.length >>> 1; j++) {
+            c = Integer.compare(a[j], b[j]);
+        }
+        return c;
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import peersim.core.Network;
+import peersim.core.Node;
+
+import java.util.Arrays;
+
+/**
+ * The class is a node's view of the network in the "linkstate" mode of DistanceVectorProtocol: the graph
+ * the node learns from the floods, or with the "shared" option the shared Topology snapshot with the edges
+ * the node knows differently in a private overlay. It floods the own link changes, tells whether they call
+ * for a new computation and, after a checkpoint was restored, completes the graph from the restored network.
+ */
+final class LinkGraph {
+
+    private final int self;                         //host node ID
+    private final boolean share;                    //only the own links are kept, over the shared snapshot
+    private final boolean mailbox;                  //receivers read what is flooded in their next cycle
+    private final EdgeList graph;                   //own links, and with floods the other nodes' links
+    private final EdgeSet known;                    //index of (source, destination) pairs in graph
+    private SharedTopology.Version topology;        //version of the shared snapshot, null until attached
+    private Topology.Overlay overlay;               //edges known differently from the snapshot
+    private boolean restoring;                      //restored from a checkpoint, not resumed yet
+    private Topology restored;                      //network as restored, copied into graph on first need
+    private boolean stale;                          //graph changed since the last computation
+    private EdgeList pending;                       //own link changes not flooded yet
+    private int[] sync;                             //neighbours that came up and need the whole graph
+    private int syncCount;                          //number of neighbours in sync
+
+    /**
+     * A constructor. The graph starts empty.
+     *
+     * @param self host node ID.
+     * @param degree expected number of own links.
+     * @param share keep only the own links, over the shared snapshot.
+     * @param mailbox receivers read flooded graphs in their next cycle.
+     */
+    LinkGraph(int self, int degree, boolean share, boolean mailbox) {
+        this.self = self;
+        this.share = share;
+        this.mailbox = mailbox;
+        this.graph = new EdgeList(degree);
+        this.known = new EdgeSet(degree);
+    }
+
+    /**
+     * Adds an edge to the graph unless it is already known.
+     *
+     * @param source source node ID.
+     * @param destination destination node ID.
+     * @param cost edge cost.
+     */
+    void add(int source, int destination, int cost) {
+        if (known.add(source, destination)) {
+            graph.add(source, destination, cost);
+            stale = true;
+        }
+    }
+
+    /**
+     * Adds an edge to the graph, or updates its cost if it is already known.
+     *
+     * @param s source node ID.
+     * @param d destination node ID.
+     * @param c edge cost.
+     * @return the cost known before, Integer.MAX_VALUE for an unknown edge, c if nothing changed
+     */
+    private int learn(int s, int d, int c) {
+        int e = known.indexOf(s, d);
+        if (e < 0) {
+            if (c != DistanceVector.INFINITY) {
+                add(s, d, c);
+            }
+            return DistanceVector.INFINITY;
+        }
+        int old = graph.cost(e);
+        graph.setCost(e, c);
+        return old;
+    }
+
+    /**
+     * @return the host's own links, in the order they were added
+     */
+    EdgeList ownEdges() {
+        /* With the shared snapshot the graph only ever holds the host's own links */
+        if (share) {
+            return graph;
+        }
+        EdgeList own = new EdgeList(4);
+        for (int e = 0; e < graph.size(); e++) {
+            if (graph.source(e) == self) {
+                own.add(self, graph.destination(e), graph.cost(e));
+            }
+        }
+        return own;
+    }
+
+    /**
+     * @return the graph, or the shared snapshot with the node's own changes
+     */
+    EdgeList edges() {
+        expand();
+        return topology != null ? topology.snapshot.edges(overlay) : graph;
+    }
+
+    /**
+     * References the shared snapshot in place of a flooded graph.
+     *
+     * @param latest the latest version of the snapshot.
+     */
+    void attach(SharedTopology.Version latest) {
+        topology = latest;
+        overlay = new Topology.Overlay();
+        stale = true;
+    }
+
+    /**
+     * @return true if the graph is over the shared snapshot
+     */
+    boolean attached() {
+        return topology != null;
+    }
+
+    /**
+     * Moves the overlay onto a later version of the shared snapshot, keeping the edges as the node knows them.
+     *
+     * @param latest the latest version of the snapshot.
+     */
+    void rebase(SharedTopology.Version latest) {
+        topology = overlay.rebase(topology, latest);
+    }
+
+    /**
+     * Tells whether the node knows exactly the edges of a snapshot.
+     *
+     * @param network the network as every node announces it.
+     * @return true if a shortest path tree over the snapshot is the node's own
+     */
+    boolean knows(Topology network) {
+        if (topology != null) {
+            return topology.snapshot == network && overlay.size() == 0;
+        }
+        int links = 0;
+        for (int e = 0; e < graph.size(); e++) {
+            int c = graph.cost(e);
+            if (c == DistanceVector.INFINITY) {
+                continue;
+            }
+            int k = network.index(graph.source(e), graph.destination(e));
+            if (k < 0 || network.cost(k) != c) {
+                return false;
+            }
+            links++;
+        }
+        return links == network.links();
+    }
+
+    /**
+     * Computes the shortest paths over the graph into a table. The caller rebases or expands the graph first.
+     *
+     * @param engine shortest path algorithm.
+     * @param result the table to fill, owned by the host.
+     */
+    void compute(PathEngine engine, DistanceVector result) {
+        int rounds, edges;
+        if (topology != null) {
+            rounds = topology.snapshot.shortestPaths(engine, self, overlay, result.cost, result.via);
+            edges = topology.snapshot.edges() + overlay.size();
+        } else {
+            rounds = engine.shortestPaths(self, result.size(), graph, result.cost, result.via);
+            edges = graph.size();
+        }
+        /* Each round looks at every edge at most once */
+        Metrics.rounds.add(rounds);
+        Metrics.relaxations.add((long) rounds * edges);
+    }
+
+    /**
+     * @return true if the graph changed since the last computation
+     */
+    boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * Records that the table was computed over the current graph.
+     */
+    void computed() {
+        stale = false;
+    }
+
+    /**
+     * @return true if the graph is computed and every own change was flooded
+     */
+    boolean isSettled() {
+        return !stale && pending == null && syncCount == 0;
+    }
+
+    /**
+     * Broadcasts the graph to all nodes.
+     *
+     * @param pid Global protocol's ID in this simulation.
+     */
+    void broadcast(int pid) {
+        /* Receivers only read the graph, so the same list serves all of them. Through the mailbox
+           they read it in the next cycle, when the graph may have changed, so they get a copy */
+        EdgeList sent = mailbox ? graph.copy() : graph;
+        int bytes = VectorMessage.bytes(sent);
+        for (int i = 0; i < Network.size(); i++) {
+            Node node = Network.get(i);
+            if (node.isUp()) {
+                send(node, pid, sent, bytes);
+            }
+        }
+    }
+
+    /**
+     * Floods the own link changes to all nodes, and sends the whole graph to neighbours that came up.
+     *
+     * @param pid Global protocol's ID in this simulation.
+     */
+    void flood(int pid) {
+        if (pending != null) {
+            EdgeList changes = pending;
+            pending = null;
+            int bytes = VectorMessage.bytes(changes);
+            for (int i = 0; i < Network.size(); i++) {
+                Node node = Network.get(i);
+                if (node.isUp() && node.getID() != self) {
+                    send(node, pid, changes, bytes);
+                }
+            }
+        }
+        EdgeList sent = syncCount == 0 || !mailbox ? graph : graph.copy();
+        int bytes = syncCount == 0 ? 0 : VectorMessage.bytes(sent);
+        for (int k = 0; k < syncCount; k++) {
+            Node node = Network.get(sync[k]);
+            if (node.isUp()) {
+                send(node, pid, sent, bytes);
+            }
+        }
+        syncCount = 0;
+    }
+
+    /**
+     * Hands edges to a node and counts the message.
+     */
+    private void send(Node node, int pid, EdgeList edges, int bytes) {
+        ((DistanceVectorProtocol) node.getProtocol(pid)).deliver(self, edges);
+        Metrics.messages.increment();
+        Metrics.edges.add(edges.size());
+        Metrics.bytes.add(bytes);
+    }
+
+    /**
+     * Floods all own links as changes, in place of the broadcast a node that came back up skips
+     * with the shared snapshot.
+     */
+    void announce() {
+        pending = graph.copy();
+    }
+
+    /**
+     * Applies a change in the cost of one of the host's links and queues it for the flood.
+     *
+     * @param neighbour the node at the other end.
+     * @param oldCost previous cost, Integer.MAX_VALUE if the link was down.
+     * @param newCost new cost, Integer.MAX_VALUE if the link is down.
+     * @param table the current table, or null before the first computation.
+     */
+    void linkChanged(int neighbour, int oldCost, int newCost, DistanceVector table) {
+        expand();
+        /* Own links are kept in the graph in both variants, the snapshot is rebuilt from them */
+        int e = known.indexOf(self, neighbour);
+        if (e >= 0) {
+            graph.setCost(e, newCost);
+        } else if (newCost != DistanceVector.INFINITY) {
+            add(self, neighbour, newCost);
+        }
+        if (topology != null) {
+            overlay.learn(topology.snapshot, self, neighbour, newCost);
+        }
+        if (!stale && affects(self, neighbour, oldCost, newCost, table)) {
+            stale = true;
+        }
+        if (pending == null) {
+            pending = new EdgeList(4);
+        }
+        pending.add(self, neighbour, newCost);
+        /* A neighbour that came back up has to learn the whole graph */
+        if (!share && oldCost == DistanceVector.INFINITY && newCost != DistanceVector.INFINITY) {
+            if (sync == null || syncCount == sync.length) {
+                sync = sync == null ? new int[4] : Arrays.copyOf(sync, syncCount << 1);
+            }
+            sync[syncCount++] = neighbour;
+        }
+    }
+
+    /**
+     * Learns the edges flooded by another node. Ignored with the shared option until the snapshot that
+     * will hold the changes is attached.
+     *
+     * @param edges the other node's graph or link changes.
+     * @param table the current table, or null before the first computation.
+     */
+    void receive(EdgeList edges, DistanceVector table) {
+        if (share && topology == null) {
+            return;
+        }
+        expand();
+        int size = edges.size();
+        int learned = 0;
+        for (int i = 0; i < size; i++) {
+            int s = edges.source(i), d = edges.destination(i), c = edges.cost(i);
+            /* Own links are only changed by the host */
+            if (s == self) {
+                continue;
+            }
+            /* Edges differing from the shared snapshot go to the overlay, others to the graph */
+            int old = topology != null ? overlay.learn(topology.snapshot, s, d, c) : learn(s, d, c);
+            /* Ignore duplicate edges */
+            if (old == c) {
+                continue;
+            }
+            learned++;
+            if (!stale && affects(s, d, old, c, table)) {
+                stale = true;
+            }
+        }
+        Metrics.duplicates.add(size - learned);
+    }
+
+    /**
+     * Tells whether a changed edge can change the shortest path tree of a table.
+     * A cheaper edge matters if it shortens the path to its end, a dearer one only if it is on the tree.
+     *
+     * @param s edge source node ID.
+     * @param d edge destination node ID.
+     * @param oldCost previous cost, Integer.MAX_VALUE if the edge was unknown or down.
+     * @param newCost new cost.
+     * @param table the current table, or null before the first computation.
+     * @return true if the table must be computed again
+     */
+    private static boolean affects(int s, int d, int oldCost, int newCost, DistanceVector table) {
+        if (table == null) {
+            return true;
+        }
+        int[] dist = table.cost;
+        if (s >= dist.length || d >= dist.length || dist[s] == DistanceVector.INFINITY) {
+            return false;
+        }
+        if (newCost < oldCost) {
+            return (long) dist[s] + newCost < dist[d];
+        }
+        return oldCost != DistanceVector.INFINITY && (long) dist[s] + oldCost == dist[d]
+                && (table.via[d] == s || (s == table.owner && table.via[d] == d));
+    }
+
+    /**
+     * Takes a table restored by Checkpoint as computed. Without the shared snapshot the graph only holds
+     * the own links until resumed with the network the flood would have built.
+     */
+    void restore() {
+        restoring = !share;
+        stale = false;
+    }
+
+    /**
+     * @return true if resume() is waiting for the shared snapshot
+     */
+    boolean resuming() {
+        return share || restoring;
+    }
+
+    /**
+     * References the shared snapshot once every node was restored, or keeps it as the network the
+     * graph is to be completed from.
+     *
+     * @param latest the latest version of the snapshot, holding every node's restored links.
+     */
+    void resume(SharedTopology.Version latest) {
+        if (share) {
+            topology = latest;
+            overlay = new Topology.Overlay();
+        } else {
+            restored = latest.snapshot;
+            restoring = false;
+        }
+    }
+
+    /**
+     * Copies the links of the other nodes as restored into the graph, after the own ones, in the order
+     * the flood would have added them.
+     */
+    void expand() {
+        if (restored == null) {
+            return;
+        }
+        Topology network = restored;
+        restored = null;
+        for (int s = 0; s < network.size; s++) {
+            if (s == self) {
+                continue;
+            }
+            for (int e = network.start(s); e < network.start(s + 1); e++) {
+                learn(s, network.destination(e), network.cost(e));
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The class holds global work counters of DistanceVectorProtocol. The protocol adds to them as it runs,
+ * MetricsObserver reads and clears them once per cycle. Counters may be updated from several threads.
+ */
+public final class Metrics {
+
+    /* Messages sent: graphs in linkstate mode, updates in vector mode */
+    public static final LongAdder messages = new LongAdder();
+    /* Edges (linkstate) or vector entries (vector) carried by those messages */
+    public static final LongAdder edges = new LongAdder();
+    /* Size of those messages in bytes, in VectorMessage's wire format */
+    public static final LongAdder bytes = new LongAdder();
+    /* Received edges discarded because they were already known */
+    public static final LongAdder duplicates = new LongAdder();
+    /* Edge relaxations attempted (linkstate) or vector entries merged (vector) */
+    public static final LongAdder relaxations = new LongAdder();
+    /* Passes over the edges (linkstate) or vectors merged (vector) */
+    public static final LongAdder rounds = new LongAdder();
+    /* The counters above, in the order of totals() */
+    private static final LongAdder[] counters = {messages, edges, bytes, duplicates, relaxations, rounds};
+    /* Amounts drained from each counter since the last reset */
+    private static final long[] drained = new long[counters.length];
+    /* Wall-clock nanoseconds spent per protocol phase */
+    private static final LongAdder[] nanos = new LongAdder[DistanceVectorProtocol.State.values().length];
+
+    static {
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] = new LongAdder();
+        }
+    }
+
+    private Metrics() { }
+
+    /**
+     * Reads and clears a counter, keeping the amount for totals().
+     *
+     * @param counter one of the counters.
+     * @return the count since the last call
+     */
+    static synchronized long drain(LongAdder counter) {
+        long value = counter.sumThenReset();
+        for (int k = 0; k < counters.length; k++) {
+            if (counters[k] == counter) {
+                drained[k] += value;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Sums every counter since the last reset, drained or not. Used by Sweep.
+     *
+     * @return messages, edges, duplicates, relaxations and rounds
+     */
+    static synchronized long[] totals() {
+        long[] totals = new long[counters.length];
+        for (int k = 0; k < counters.length; k++) {
+            totals[k] = drained[k] + counters[k].sum();
+        }
+        return totals;
+    }
+
+    /**
+     * Adds time spent in a phase.
+     *
+     * @param phase protocol phase.
+     * @param elapsed nanoseconds.
+     */
+    static void time(DistanceVectorProtocol.State phase, long elapsed) {
+        nanos[phase.ordinal()].add(elapsed);
+    }
+
+    /**
+     * Reads and clears the time spent in a phase.
+     *
+     * @param phase protocol phase.
+     * @return nanoseconds since the last call
+     */
+    static long drainTime(DistanceVectorProtocol.State phase) {
+        return nanos[phase.ordinal()].sumThenReset();
+    }
+
+    /**
+     * Clears every counter.
+     */
+    public static synchronized void reset() {
+        for (int k = 0; k < counters.length; k++) {
+            counters[k].reset();
+            drained[k] = 0;
+        }
+        for (LongAdder adder : nanos) {
+            adder.reset();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.io.BufferedOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.Locale;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Network;
+
+/**
+ * The control reports the work done by DistanceVectorProtocol in each cycle, one line per cycle:
+ * messages, edges and bytes sent, bytes per node, duplicate edges discarded, relaxations and rounds of the path computation,
+ * wall-clock nanoseconds per protocol phase, and the number of nodes and table entries that changed.
+ * Controls run before the protocol, so every line describes the previous cycle. With the FINAL flag
+ * the last cycle is reported too.
+ *
+ * Parameters: "protocol" the DistanceVectorProtocol, "outf" output file (standard output if absent),
+ * "format" csv (default) or json for JSON lines, "stop" flag to end the simulation once every
+ * node's table is stable and no Churn has executions left.
+ * PREREQUISITE, must be used for DistanceVectorProtocol protocol in PeerSim.
+ */
+public class MetricsObserver implements Control {
+
+    private static final String PAR_PROT = "protocol";
+    private static final String PAR_FILEPATH = "outf";
+    private static final String PAR_FORMAT = "format";
+    private static final String PAR_STOP = "stop";
+
+    private static final DistanceVectorProtocol.State[] PHASES = DistanceVectorProtocol.State.values();
+
+    private final int pid;                  //DistanceVectorProtocol protocol ID
+    private final boolean json;             //JSON lines instead of CSV
+    private final boolean stop;             //end the simulation once converged
+    private final PrintStream out;          //buffered output
+    private final String[] columns;         //field names
+    private boolean header;                 //CSV header written
+    private boolean stopped;                //simulation ended by this control
+
+    /**
+     * A constructor
+     *
+     * @param prefix a string provided by PeerSim and used to access parameters from the configuration file.
+     */
+    public MetricsObserver(String prefix) {
+        this.pid = Configuration.getPid(prefix + "." + PAR_PROT);
+        String format = Configuration.getString(prefix + "." + PAR_FORMAT, "csv");
+        if (!format.equals("csv") && !format.equals("json")) {
+            throw new IllegalParameterException(prefix + "." + PAR_FORMAT, "Unknown format " + format);
+        }
+        this.json = format.equals("json");
+        this.stop = Configuration.contains(prefix + "." + PAR_STOP);
+        String outf = Configuration.getString(prefix + "." + PAR_FILEPATH, null);
+        if (outf == null) {
+            this.out = new PrintStream(new BufferedOutputStream(System.out, 1 << 16), false);
+        } else {
+            try {
+                this.out = new PrintStream(new BufferedOutputStream(new FileOutputStream(outf), 1 << 16), false);
+            } catch (FileNotFoundException e) {
+                throw new IllegalParameterException(prefix + "." + PAR_FILEPATH, e.getMessage());
+            }
+        }
+        this.columns = new String[10 + PHASES.length];
+        String[] counters = {"cycle", "messages", "edges", "bytes", "bytes_per_node", "duplicates", "relaxations",
+                "rounds"};
+        System.arraycopy(counters, 0, columns, 0, counters.length);
+        for (int i = 0; i < PHASES.length; i++) {
+            columns[counters.length + i] = PHASES[i].name().toLowerCase(Locale.ROOT) + "_ns";
+        }
+        columns[columns.length - 2] = "changed_nodes";
+        columns[columns.length - 1] = "changed_entries";
+        /* Counters left by an earlier run in this JVM */
+        Metrics.reset();
+    }
+
+    /**
+     * Implementation of the common method. This method is called in each cycle.
+     */
+    @Override
+    public boolean execute() {
+        boolean last = CommonState.getPhase() == CommonState.POST_SIMULATION;
+        /* Changes made in previous cycle, or in this one once the simulation is over */
+        long cycle = last ? CommonState.getTime() : CommonState.getTime() - 1;
+        if (cycle < 0 || (last && stopped)) {
+            return false;
+        }
+        int changedNodes = 0, changedEntries = 0, up = 0;
+        boolean stable = true;
+        for (int i = 0; i < Network.size(); i++) {
+            DistanceVectorProtocol protocol = (DistanceVectorProtocol) Network.get(i).getProtocol(pid);
+            int changed = protocol.getChanged(cycle);
+            if (changed > 0) {
+                changedNodes++;
+                changedEntries += changed;
+            }
+            /* Failed nodes do not run */
+            stable &= protocol.isStable() || !Network.get(i).isUp();
+            if (Network.get(i).isUp()) {
+                up++;
+            }
+        }
+        long[] values = new long[columns.length];
+        values[0] = cycle;
+        values[1] = Metrics.drain(Metrics.messages);
+        values[2] = Metrics.drain(Metrics.edges);
+        values[3] = Metrics.drain(Metrics.bytes);
+        values[4] = up == 0 ? 0 : values[3] / up;
+        values[5] = Metrics.drain(Metrics.duplicates);
+        values[6] = Metrics.drain(Metrics.relaxations);
+        values[7] = Metrics.drain(Metrics.rounds);
+        for (int i = 0; i < PHASES.length; i++) {
+            values[8 + i] = Metrics.drainTime(PHASES[i]);
+        }
+        values[values.length - 2] = changedNodes;
+        values[values.length - 1] = changedEntries;
+        print(values);
+        /* Converged now, but a scheduled Churn would change the network again */
+        stopped = stop && stable && !last && !Churn.pending();
+        return stopped;
+    }
+
+    /**
+     * Writes one line of values.
+     *
+     * @param values a value per column.
+     */
+    private void print(long[] values) {
+        StringBuilder line = new StringBuilder(16 * values.length);
+        if (json) {
+            line.append('{');
+            for (int i = 0; i < values.length; i++) {
+                line.append(i == 0 ? "\"" : ",\"").append(columns[i]).append("\":").append(values[i]);
+            }
+            line.append('}');
+        } else {
+            if (!header) {
+                out.println(String.join(",", columns));
+                header = true;
+            }
+            for (int i = 0; i < values.length; i++) {
+                line.append(i == 0 ? "" : ",").append(values[i]);
+            }
+        }
+        out.println(line);
+        out.flush();
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Arrays;
+
+/**
+ * The class holds the equal-cost next hops of a node to every destination, for multipath forwarding.
+ *
+ * Next hops can only be the owner's neighbours, so each destination keeps a bitset over the owner's
+ * neighbours sorted by ID: one long per destination up to 64 neighbours. A neighbour is a next hop to
+ * a destination if some shortest path to the destination leaves through it. At most k next hops are kept,
+ * those with the lowest IDs.
+ */
+public final class Multipath {
+
+    public final int owner;             //owner node ID
+    private final int[] neighbours;     //owner's neighbours, sorted, bit b stands for neighbours[b]
+    private final int words;            //longs per destination
+    private final long[] bits;          //next hop sets, words per destination
+
+    private Multipath(int owner, int[] neighbours, int size) {
+        this.owner = owner;
+        this.neighbours = neighbours;
+        this.words = Math.max(1, (neighbours.length + 63) >>> 6);
+        this.bits = new long[size * words];
+    }
+
+    /**
+     * Collects the next hops of every shortest path from the owner. An edge is on a shortest path if the
+     * cost of its source plus its own cost is the cost of its destination, and a destination's next hops are
+     * those of the sources of such edges, or the destination itself for the owner's own links.
+     *
+     * @param owner owner node ID.
+     * @param n number of nodes.
+     * @param edges the graph the costs were computed over.
+     * @param dist shortest path costs from the owner.
+     * @param k largest number of next hops kept per destination.
+     * @return the next hop sets
+     */
+    public static Multipath build(int owner, int n, EdgeList edges, int[] dist, int k) {
+        int m = edges.size();
+        int[] src = edges.sources(), dst = edges.destinations(), cost = edges.costs();
+        /* Own neighbours */
+        int[] neighbours = new int[4];
+        int degree = 0;
+        for (int e = 0; e < m; e++) {
+            if (src[e] == owner && dst[e] != owner && cost[e] != DistanceVector.INFINITY) {
+                if (degree == neighbours.length) {
+                    neighbours = Arrays.copyOf(neighbours, degree << 1);
+                }
+                neighbours[degree++] = dst[e];
+            }
+        }
+        Arrays.sort(neighbours, 0, degree);
+        int distinct = 0;
+        for (int b = 0; b < degree; b++) {
+            if (b == 0 || neighbours[b] != neighbours[b - 1]) {
+                neighbours[distinct++] = neighbours[b];
+            }
+        }
+        Multipath result = new Multipath(owner, Arrays.copyOf(neighbours, distinct), n);
+        /* Edges on shortest paths, grouped by destination */
+        int[] offset = new int[n + 1];
+        boolean zero = false;
+        for (int e = 0; e < m; e++) {
+            if (tight(owner, src[e], dst[e], cost[e], dist)) {
+                offset[dst[e] + 1]++;
+                zero |= cost[e] == 0;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            offset[i + 1] += offset[i];
+        }
+        int[] fill = Arrays.copyOf(offset, n);
+        int[] from = new int[offset[n]];
+        for (int e = 0; e < m; e++) {
+            if (tight(owner, src[e], dst[e], cost[e], dist)) {
+                from[fill[dst[e]]++] = src[e];
+            }
+        }
+        /* Destinations by increasing cost, so that sources come before their destinations */
+        long[] order = new long[n];
+        int reachable = 0;
+        for (int d = 0; d < n; d++) {
+            if (d != owner && dist[d] != DistanceVector.INFINITY) {
+                order[reachable++] = (long) dist[d] << 32 | d;
+            }
+        }
+        Arrays.sort(order, 0, reachable);
+        /* Edges of zero cost join destinations of equal cost in any order, so repeat until nothing changes */
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int r = 0; r < reachable; r++) {
+                int d = (int) order[r];
+                for (int j = offset[d]; j < offset[d + 1]; j++) {
+                    changed |= result.join(d, from[j]);
+                }
+            }
+            changed &= zero;
+        }
+        if (k < distinct) {
+            for (int d = 0; d < n; d++) {
+                result.limit(d, k);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the edge is on a shortest path from the owner
+     */
+    private static boolean tight(int owner, int s, int d, int c, int[] dist) {
+        return d != owner && c != DistanceVector.INFINITY && dist[s] != DistanceVector.INFINITY
+                && (long) dist[s] + c == dist[d];
+    }
+
+    /**
+     * Adds the next hops through a shortest path edge to a destination's set.
+     *
+     * @param d destination.
+     * @param s source of the edge.
+     * @return true if the set grew
+     */
+    private boolean join(int d, int s) {
+        int to = d * words;
+        if (s == owner) {
+            int b = Arrays.binarySearch(neighbours, d);
+            long bit = 1L << b;
+            if (b < 0 || (bits[to + (b >>> 6)] & bit) != 0) {
+                return false;
+            }
+            bits[to + (b >>> 6)] |= bit;
+            return true;
+        }
+        boolean grew = false;
+        for (int w = 0, from = s * words; w < words; w++) {
+            long joined = bits[to + w] | bits[from + w];
+            grew |= joined != bits[to + w];
+            bits[to + w] = joined;
+        }
+        return grew;
+    }
+
+    /**
+     * Keeps the k lowest next hops of a destination.
+     */
+    private void limit(int d, int k) {
+        for (int w = d * words, end = w + words; w < end; w++) {
+            long set = bits[w];
+            while (set != 0 && k > 0) {
+                set &= set - 1;
+                k--;
+            }
+            /* What is left of set are the bits over the limit */
+            bits[w] &= ~set;
+        }
+    }
+
+    /**
+     * @param destination destination node ID.
+     * @return number of next hops kept, 0 for the owner and unreachable destinations
+     */
+    public int count(int destination) {
+        int count = 0;
+        for (int w = destination * words, end = w + words; w < end; w++) {
+            count += Long.bitCount(bits[w]);
+        }
+        return count;
+    }
+
+    /**
+     * Lists the next hops to a destination.
+     *
+     * @param destination destination node ID.
+     * @param out output next hop node IDs in increasing order, room for count(destination).
+     * @return number of next hops
+     */
+    public int nextHops(int destination, int[] out) {
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            for (long set = bits[destination * words + w]; set != 0; set &= set - 1) {
+                out[count++] = neighbours[(w << 6) + Long.numberOfTrailingZeros(set)];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Picks one of the next hops to a destination for a flow, so that the packets of a flow stay on one path
+     * and different flows spread over all of them.
+     *
+     * @param destination destination node ID.
+     * @param flow flow hash, any int.
+     * @return the next hop node ID, -1 if there is none
+     */
+    public int nextHop(int destination, int flow) {
+        int count = count(destination);
+        if (count == 0) {
+            return -1;
+        }
+        int pick = Math.floorMod(flow, count);
+        for (int w = 0; w < words; w++) {
+            long set = bits[destination * words + w];
+            int here = Long.bitCount(set);
+            if (pick >= here) {
+                pick -= here;
+                continue;
+            }
+            for (; pick > 0; pick--) {
+                set &= set - 1;
+            }
+            return neighbours[(w << 6) + Long.numberOfTrailingZeros(set)];
+        }
+        return -1;
+    }
+
+    /**
+     * @return memory held by the sets, in bytes
+     */
+    public long bytes() {
+        return 8L * bits.length + 4L * neighbours.length;
+    }
+}
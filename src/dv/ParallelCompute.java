@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import peersim.config.Configuration;
+import peersim.core.Control;
+import peersim.core.Network;
+import peersim.core.Node;
+
+/**
+ * The control runs the COMPUTE phase of every DistanceVectorProtocol instance in parallel.
+ * Each node computes over its own graph and table only, so the resulting tables are identical
+ * to a serial run whatever the number of threads. Nodes computed here find nothing left to do
+ * in their own cycle. The control does nothing for nodes in vector mode.
+ *
+ * Parameters: "protocol" the DistanceVectorProtocol, "parallelism" the number of worker threads
+ * (defaults to the number of available processors).
+ * PREREQUISITE, must be used for DistanceVectorProtocol protocol in PeerSim.
+ */
+public class ParallelCompute implements Control {
+
+    private static final String PAR_PROT = "protocol";
+    private static final String PAR_PARALLELISM = "parallelism";
+    /* Nodes computed by one task without further splitting */
+    private static final int BATCH = 16;
+
+    private final int pid;                  //DistanceVectorProtocol protocol ID
+    private final ForkJoinPool pool;        //worker threads
+
+    /**
+     * A constructor
+     *
+     * @param prefix a string provided by PeerSim and used to access parameters from the configuration file.
+     */
+    public ParallelCompute(String prefix) {
+        this.pid = Configuration.getPid(prefix + "." + PAR_PROT);
+        int parallelism = Configuration.getInt(prefix + "." + PAR_PARALLELISM,
+                Runtime.getRuntime().availableProcessors());
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    /**
+     * Implementation of the common method. This method is called in each cycle.
+     */
+    @Override
+    public boolean execute() {
+        long start = System.nanoTime();
+        pool.invoke(new Batch(0, Network.size()));
+        Metrics.time(DistanceVectorProtocol.State.COMPUTE, System.nanoTime() - start);
+        return false;
+    }
+
+    /**
+     * Computes a range of nodes, splitting it in halves while it is larger than a batch.
+     */
+    private class Batch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final int from, to;
+
+        Batch(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BATCH) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Batch(from, mid), new Batch(mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                Node node = Network.get(i);
+                DistanceVectorProtocol protocol = (DistanceVectorProtocol) node.getProtocol(pid);
+                if (protocol.needsCompute()) {
+                    protocol.compute(node.getID());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import peersim.cdsim.CDProtocol;
+import peersim.cdsim.CDState;
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.Control;
+import peersim.core.Network;
+import peersim.core.Node;
+import peersim.core.Protocol;
+import peersim.core.Scheduler;
+
+/**
+ * The control replaces PeerSim's default cycle: it runs the cycle of every up node, like FullNextCycle,
+ * with the nodes spread over several threads. Protocols are run in their configured order and schedule
+ * on each node, and nodes that go down in their cycle skip the rest of it.
+ *
+ * DistanceVectorProtocol must use the "mailbox" flag, so that a node's cycle only changes its own state and
+ * the inboxes of others. Updates are then applied in the same order whichever thread ran the senders, and
+ * the results are identical to a serial run with the flag. The shared topology snapshot is built under a lock,
+ * Metrics only counts in LongAdders and messages are pooled under a lock, while the cost store and the
+ * Linkables are only changed by controls, between cycles. CDState's current node and protocol are not set.
+ *
+ * Parameters: "parallelism" the number of worker threads (defaults to the number of available processors).
+ * PREREQUISITE, "simulation.nodefaultcycle" must be set, and the control must run after the others in a cycle
+ * like the default one, see "order.control".
+ */
+public class ParallelCycle implements Control {
+
+    private static final String PAR_PARALLELISM = "parallelism";
+    /* Nodes run by one task without further splitting */
+    private static final int BATCH = 16;
+
+    private final Scheduler[] schedules;    //schedule of each protocol
+    private final ForkJoinPool pool;        //worker threads
+
+    /**
+     * A constructor
+     *
+     * @param prefix a string provided by PeerSim and used to access parameters from the configuration file.
+     */
+    public ParallelCycle(String prefix) {
+        String[] names = Configuration.getNames("protocol");
+        this.schedules = new Scheduler[names.length];
+        for (int k = 0; k < names.length; k++) {
+            schedules[k] = new Scheduler(names[k]);
+            Protocol prototype = Network.prototype.getProtocol(k);
+            if (prototype instanceof DistanceVectorProtocol && !((DistanceVectorProtocol) prototype).usesMailbox()) {
+                throw new IllegalParameterException(names[k], "Needs the mailbox flag to run in parallel");
+            }
+        }
+        int parallelism = Configuration.getInt(prefix + "." + PAR_PARALLELISM,
+                Runtime.getRuntime().availableProcessors());
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    /**
+     * Implementation of the common method. This method is called in each cycle.
+     */
+    @Override
+    public boolean execute() {
+        long cycle = CDState.getCycle();
+        boolean[] active = new boolean[schedules.length];
+        for (int k = 0; k < schedules.length; k++) {
+            active[k] = schedules[k].active(cycle);
+        }
+        pool.invoke(new Batch(0, Network.size(), active));
+        return false;
+    }
+
+    /**
+     * Runs the cycles of a range of nodes, splitting it in halves while it is larger than a batch.
+     */
+    private static class Batch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final int from, to;
+        private final boolean[] active;     //protocols scheduled in this cycle
+
+        Batch(int from, int to, boolean[] active) {
+            this.from = from;
+            this.to = to;
+            this.active = active;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BATCH) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Batch(from, mid, active), new Batch(mid, to, active));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                Node node = Network.get(i);
+                for (int k = 0; k < active.length && node.isUp(); k++) {
+                    Protocol protocol = node.getProtocol(k);
+                    if (active[k] && protocol instanceof CDProtocol) {
+                        ((CDProtocol) protocol).nextCycle(node, k);
+                    }
+                }
+            }
+        }
+    }
+}
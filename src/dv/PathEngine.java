@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Locale;
+
+/**
+ * The interface represents a single-source shortest path algorithm over an edge list.
+ * Edges are given as parallel source/destination/cost arrays, or as compressed sparse rows, results
+ * are written into distance and predecessor arrays indexed by node ID. Edges with a cost of
+ * Integer.MAX_VALUE are ignored.
+ *
+ * The predecessor of a destination is the last node before it on the path,
+ * or the destination itself when it is a direct neighbour of the source.
+ * Engines hold no state between calls, so one instance may be used by many threads.
+ */
+public interface PathEngine {
+
+    /**
+     * Computes shortest paths from a single source.
+     *
+     * @param source source node ID.
+     * @param n number of nodes.
+     * @param src edge source node IDs.
+     * @param dst edge destination node IDs.
+     * @param cost edge costs.
+     * @param m number of edges in the arrays.
+     * @param first start of a range of edges to prefer when several paths cost the same.
+     * @param firstEnd end of that range.
+     * @param dist output distances, at least n long.
+     * @param pred output predecessors, at least n long.
+     * @return number of passes over the edges
+     */
+    int shortestPaths(int source, int n, int[] src, int[] dst, int[] cost, int m,
+                      int first, int firstEnd, int[] dist, int[] pred);
+
+    /**
+     * Computes shortest paths from a single source over edges already grouped by source node, in compressed
+     * sparse rows, so that no adjacency has to be built. The edges leaving node u are adj[offset[u]] to
+     * adj[offset[u + 1] - 1], or the positions offset[u] to offset[u + 1] - 1 themselves when adj is null.
+     * The source's row is preferred when several paths cost the same. Rows of a patch replace those of
+     * the same nodes, so that a few changed edges do not need a copy of all the others.
+     *
+     * @param source source node ID.
+     * @param n number of nodes.
+     * @param offset row starts, n+1 entries.
+     * @param adj edge positions grouped by source, or null for edges stored row by row.
+     * @param dst edge destination node IDs.
+     * @param cost edge costs.
+     * @param patch rows that replace some of the others, or null.
+     * @param dist output distances, at least n long.
+     * @param pred output predecessors, at least n long.
+     * @return number of passes over the edges
+     */
+    int shortestPaths(int source, int n, int[] offset, int[] adj, int[] dst, int[] cost, Topology.Patch patch,
+                      int[] dist, int[] pred);
+
+    /**
+     * Computes shortest paths from a single source over an edge list, with no preferred range.
+     * Engines that search row by row use the list's cached rows instead of building an adjacency per call.
+     *
+     * @param source source node ID.
+     * @param n number of nodes.
+     * @param edges the edges.
+     * @param dist output distances, at least n long.
+     * @param pred output predecessors, at least n long.
+     * @return number of passes over the edges
+     */
+    default int shortestPaths(int source, int n, EdgeList edges, int[] dist, int[] pred) {
+        return shortestPaths(source, n, edges.sources(), edges.destinations(), edges.costs(), edges.size(),
+                0, 0, dist, pred);
+    }
+
+    /**
+     * Looks up an engine by its configuration name.
+     *
+     * @param name "bellmanford", "dijkstra" or "bucket".
+     * @return the engine
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    static PathEngine forName(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "bellmanford":
+                return new BellmanFord();
+            case "dijkstra":
+                return new Dijkstra();
+            case "bucket":
+                return new BucketDijkstra();
+            default:
+                throw new IllegalArgumentException("Unknown engine " + name);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Network;
+import peersim.core.Node;
+
+/**
+ * The control publishes a read-only Routes snapshot of all routing tables every time it runs.
+ * Next hops are the protocol's own, so in vector mode they are the hops the table forwards on, and as the
+ * protocol replaces them whenever a route changes, they also tell which rows changed. Rows of nodes whose
+ * table did not change are shared with the previous snapshot, together with their cached paths. A changed
+ * table is published as it is when the protocol replaces its tables on every computation, and copied only
+ * when the protocol changes it in place. Any thread can query the latest snapshot through routes()
+ * while the simulation goes on; a snapshot never changes once published.
+ *
+ * Parameters: "protocol" the DistanceVectorProtocol, "cache" largest number of cached paths (default 65536).
+ * PREREQUISITE, must be used for DistanceVectorProtocol protocol in PeerSim.
+ */
+public class RouteService implements Control {
+
+    private static final String PAR_PROT = "protocol";
+    private static final String PAR_CACHE = "cache";
+
+    /* Latest snapshot, null until the control first runs */
+    private static volatile Routes latest;
+
+    private final int pid;                  //DistanceVectorProtocol protocol ID
+    private final Routes.PathCache cache;   //paths shared by snapshots
+
+    /**
+     * A constructor
+     *
+     * @param prefix a string provided by PeerSim and used to access parameters from the configuration file.
+     */
+    public RouteService(String prefix) {
+        this.pid = Configuration.getPid(prefix + "." + PAR_PROT);
+        int capacity = Configuration.getInt(prefix + "." + PAR_CACHE, 1 << 16);
+        if (capacity < 1) {
+            throw new IllegalParameterException(prefix + "." + PAR_CACHE, "Must be positive");
+        }
+        this.cache = new Routes.PathCache(capacity);
+        latest = null;
+    }
+
+    /**
+     * Global access to the latest snapshot.
+     *
+     * @return the snapshot, or null before the control first ran
+     */
+    public static Routes routes() {
+        return latest;
+    }
+
+    /**
+     * Forgets the snapshot of the previous experiment. Called by Sweep before a run in a reused class loader.
+     */
+    static void reset() {
+        latest = null;
+    }
+
+    /**
+     * Implementation of the common method. This method is called in each cycle.
+     */
+    @Override
+    public boolean execute() {
+        int size = Network.size();
+        Routes previous = latest != null && latest.size() == size ? latest : null;
+        int[][] cost = new int[size][], via = new int[size][], next = new int[size][];
+        for (int i = 0; i < size; i++) {
+            Node node = Network.get(i);
+            DistanceVectorProtocol protocol = (DistanceVectorProtocol) node.getProtocol(pid);
+            DistanceVector table = protocol.getTable();
+            /* Failed nodes route nothing */
+            if (!node.isUp() || table == null || table.size() != size) {
+                continue;
+            }
+            next[i] = protocol.getNextHops();
+            if (previous != null && previous.next[i] == next[i]) {
+                cost[i] = previous.cost[i];
+                via[i] = previous.via[i];
+                continue;
+            }
+            boolean copy = protocol.changesInPlace();
+            cost[i] = copy ? table.cost.clone() : table.cost;
+            via[i] = copy ? table.via.clone() : table.via;
+        }
+        latest = new Routes(CommonState.getTime(), cost, via, next, cache);
+        return false;
+    }
+}
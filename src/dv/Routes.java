@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The class is a read-only snapshot of every node's routing table, taken by RouteService.
+ * Rows are copies, so the simulation can go on while the snapshot is queried from any number of threads.
+ *
+ * Cost and next hop are array lookups. Full paths are rebuilt by following the source's predecessors
+ * and kept in an LRU cache that is shared by successive snapshots; a cached path is only used while the
+ * source's row is the same.
+ */
+public final class Routes {
+
+    final long time;                    //simulation time of the snapshot
+    final int[][] cost;                 //path costs per source, null if the source has no table
+    final int[][] via;                  //predecessors per source
+    final int[][] next;                 //next hops per source
+    private final PathCache cache;      //paths shared by snapshots
+
+    /**
+     * A constructor.
+     *
+     * @param time simulation time of the snapshot.
+     * @param cost path costs per source.
+     * @param via predecessors per source.
+     * @param next next hops per source.
+     * @param cache path cache.
+     */
+    Routes(long time, int[][] cost, int[][] via, int[][] next, PathCache cache) {
+        this.time = time;
+        this.cost = cost;
+        this.via = via;
+        this.next = next;
+        this.cache = cache;
+    }
+
+    /**
+     * @return number of nodes
+     */
+    public int size() {
+        return cost.length;
+    }
+
+    /**
+     * @return simulation time at which the snapshot was taken
+     */
+    public long time() {
+        return time;
+    }
+
+    /**
+     * @param source source node ID.
+     * @param destination destination node ID.
+     * @return cost of the route, DistanceVector.INFINITY if there is none
+     */
+    public int cost(int source, int destination) {
+        int[] row = row(cost, source, destination);
+        return row == null ? DistanceVector.INFINITY : row[destination];
+    }
+
+    /**
+     * @param source source node ID.
+     * @param destination destination node ID.
+     * @return the neighbour of the source the route leaves through, -1 if there is no route or both are the same
+     */
+    public int nextHop(int source, int destination) {
+        int[] row = row(next, source, destination);
+        return row == null ? -1 : row[destination];
+    }
+
+    /**
+     * Rebuilds the route from the source's predecessors.
+     *
+     * @param source source node ID.
+     * @param destination destination node ID.
+     * @return node IDs from source to destination, or null if there is no route
+     */
+    public int[] path(int source, int destination) {
+        int[] row = row(via, source, destination);
+        if (row == null || cost[source][destination] == DistanceVector.INFINITY) {
+            return null;
+        }
+        long key = EdgeSet.key(source, destination);
+        PathCache.Cached entry = cache.get(key);
+        if (entry == null || entry.row != row) {
+            entry = new PathCache.Cached(row, walk(source, destination, row));
+            cache.put(key, entry);
+        }
+        return entry.path == null ? null : entry.path.clone();
+    }
+
+    /**
+     * Looks up many routes at once.
+     *
+     * @param sources source node IDs.
+     * @param destinations destination node IDs, as many as sources.
+     * @param costs output route costs, or null.
+     * @param nextHops output next hops, or null.
+     */
+    public void query(int[] sources, int[] destinations, int[] costs, int[] nextHops) {
+        for (int k = 0; k < sources.length; k++) {
+            if (costs != null) {
+                costs[k] = cost(sources[k], destinations[k]);
+            }
+            if (nextHops != null) {
+                nextHops[k] = nextHop(sources[k], destinations[k]);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds many routes at once.
+     *
+     * @param sources source node IDs.
+     * @param destinations destination node IDs, as many as sources.
+     * @return a path per query, null where there is no route
+     */
+    public int[][] paths(int[] sources, int[] destinations) {
+        int[][] paths = new int[sources.length][];
+        for (int k = 0; k < sources.length; k++) {
+            paths[k] = path(sources[k], destinations[k]);
+        }
+        return paths;
+    }
+
+    /**
+     * @return the source's row, or null if either ID is out of range or the source has no table
+     */
+    private static int[] row(int[][] rows, int source, int destination) {
+        if (source < 0 || source >= rows.length || destination < 0 || destination >= rows.length) {
+            return null;
+        }
+        return rows[source];
+    }
+
+    /**
+     * Follows predecessors from the destination back to the source.
+     *
+     * @return node IDs from source to destination, or null if the predecessors do not lead to the source
+     */
+    private static int[] walk(int source, int destination, int[] via) {
+        int length = 1;
+        for (int x = destination; x != source; length++) {
+            /* A direct neighbour is its own predecessor */
+            x = via[x] == x ? source : via[x];
+            if (length > via.length) {
+                return null;
+            }
+        }
+        int[] path = new int[length];
+        for (int x = destination, k = length - 1; k >= 0; k--) {
+            path[k] = x;
+            x = via[x] == x ? source : via[x];
+        }
+        return path;
+    }
+
+    /**
+     * Computes the next hop to every destination from a source's predecessors.
+     *
+     * @param owner source node ID.
+     * @param cost path costs.
+     * @param via predecessors.
+     * @return next hop per destination, -1 for the source and unreachable destinations
+     */
+    static int[] nextHops(int owner, int[] cost, int[] via) {
+        final int unknown = -2;
+        int n = via.length;
+        int[] next = new int[n];
+        int[] chain = new int[n];
+        Arrays.fill(next, unknown);
+        next[owner] = -1;
+        for (int d = 0; d < n; d++) {
+            int length = 0, hop = -1;
+            for (int x = d; ; x = via[x]) {
+                if (next[x] != unknown) {
+                    hop = next[x];
+                    break;
+                }
+                if (cost[x] == DistanceVector.INFINITY || length == n) {
+                    break;
+                }
+                chain[length++] = x;
+                if (via[x] == x) {
+                    hop = x;
+                    break;
+                }
+            }
+            while (length > 0) {
+                next[chain[--length]] = hop;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * The class is a thread-safe LRU cache of paths, split into segments that are locked separately.
+     */
+    static final class PathCache {
+
+        private static final int SEGMENTS = 16;
+
+        private final Segment[] segments = new Segment[SEGMENTS];
+
+        /**
+         * A constructor.
+         *
+         * @param capacity largest number of cached paths.
+         */
+        PathCache(int capacity) {
+            for (int i = 0; i < SEGMENTS; i++) {
+                segments[i] = new Segment(Math.max(1, capacity / SEGMENTS));
+            }
+        }
+
+        Cached get(long key) {
+            Segment segment = segment(key);
+            synchronized (segment) {
+                return segment.get(key);
+            }
+        }
+
+        void put(long key, Cached entry) {
+            Segment segment = segment(key);
+            synchronized (segment) {
+                segment.put(key, entry);
+            }
+        }
+
+        private Segment segment(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return segments[(int) (h >>> 60) & (SEGMENTS - 1)];
+        }
+
+        /**
+         * A path and the row of predecessors it was rebuilt from.
+         */
+        static final class Cached {
+            final int[] row;
+            final int[] path;
+
+            Cached(int[] row, int[] path) {
+                this.row = row;
+                this.path = path;
+            }
+        }
+
+        /**
+         * A segment in access order, dropping the least recently used path when full.
+         */
+        private static final class Segment extends LinkedHashMap<Long, Cached> {
+
+            private static final long serialVersionUID = 1L;
+            private final int capacity;
+
+            Segment(int capacity) {
+                super(16, 0.75f, true);
+                this.capacity = capacity;
+            }
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Cached> eldest) {
+                return size() > capacity;
+            }
+        }
+    }
+}
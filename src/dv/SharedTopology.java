@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * The class owns the Topology snapshot that every node references with the shared option in linkstate mode.
+ * Snapshots never change: after own links changed, the next use builds a new one and publishes it through
+ * an atomic reference, without locks. Each published version links to the one that replaces it, with the
+ * edges that differ between the two, so that nodes can move their overlays along the chain.
+ *
+ * The version replacing another is linked before it is published, so a node that sees the latest version
+ * always finds the whole chain leading to it.
+ */
+public final class SharedTopology {
+
+    /* A published snapshot */
+    public static final class Version {
+        public final Topology snapshot; //the snapshot
+        public final EdgeList changes;  //edges that differ from the version replaced, with their cost there
+        private final int count;        //own link changes the snapshot holds
+        private final AtomicReference<Version> next = new AtomicReference<>();  //replacing version, once built
+
+        Version(Topology snapshot, EdgeList changes, int count) {
+            this.snapshot = snapshot;
+            this.changes = changes;
+            this.count = count;
+        }
+
+        /**
+         * @return the version that replaced this one, null while this one is the latest
+         */
+        public Version next() {
+            return next.get();
+        }
+    }
+
+    private final AtomicReference<Version> latest = new AtomicReference<>();   //latest published version
+    private final AtomicInteger changes = new AtomicInteger();                  //own link changes so far
+
+    /**
+     * Marks the latest snapshot as outdated, it is rebuilt on next use.
+     */
+    public void invalidate() {
+        changes.incrementAndGet();
+    }
+
+    /**
+     * Returns the latest version, building it from every node's own edges on first use and after own links
+     * changed. Threads that need the same rebuild at once agree on a single new version.
+     *
+     * @param size number of nodes, a snapshot of another size is rebuilt.
+     * @param build builds a snapshot from every node's own edges.
+     * @return the latest version
+     */
+    public Version latest(int size, Supplier<Topology> build) {
+        while (true) {
+            Version current = latest.get();
+            int count = changes.get();
+            if (current != null && current.count == count && current.snapshot.size == size) {
+                return current;
+            }
+            Topology snapshot = build.get();
+            if (current == null || current.snapshot.size != snapshot.size) {
+                /* Nothing to move from */
+                Version built = new Version(snapshot, new EdgeList(0), count);
+                if (latest.compareAndSet(current, built)) {
+                    return built;
+                }
+                continue;
+            }
+            Version built = new Version(snapshot, current.snapshot.differences(snapshot), count);
+            if (!current.next.compareAndSet(null, built)) {
+                /* Another thread linked its version first, help publish it */
+                built = current.next.get();
+            }
+            latest.compareAndSet(current, built);
+        }
+    }
+}
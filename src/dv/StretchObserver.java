@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Locale;
+
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.Network;
+
+/**
+ * The control compares the routes of the "area" mode of DistanceVectorProtocol with flat shortest paths.
+ * From each sampled source it follows the nodes' next hops to every other node, adds up the link costs,
+ * and divides by the shortest path cost over the whole network. It prints one CSV line per execution:
+ * the cycle, the pairs followed, the pairs without a route (no next hop, or a loop), the mean and largest
+ * stretch of the others, and the mean number of table entries per node against the network size
+ * a flat table holds.
+ *
+ * Parameters: "protocol" the DistanceVectorProtocol, "sources" number of sources spread evenly over
+ * the node IDs (default 10, 0 for every node).
+ * PREREQUISITE, the protocol must run in area mode.
+ */
+public class StretchObserver implements Control {
+
+    private static final String PAR_PROT = "protocol";
+    private static final String PAR_SOURCES = "sources";
+
+    private final int pid;                  //DistanceVectorProtocol protocol ID
+    private final int sources;              //sources sampled, 0 for all
+    private boolean header;                 //CSV header written
+
+    /**
+     * A constructor
+     *
+     * @param prefix a string provided by PeerSim and used to access parameters from the configuration file.
+     */
+    public StretchObserver(String prefix) {
+        this.pid = Configuration.getPid(prefix + "." + PAR_PROT);
+        this.sources = Configuration.getInt(prefix + "." + PAR_SOURCES, 10);
+        if (sources < 0) {
+            throw new IllegalParameterException(prefix + "." + PAR_SOURCES, "Must not be negative");
+        }
+    }
+
+    /**
+     * Implementation of the common method. This method is called in each cycle.
+     */
+    @Override
+    public boolean execute() {
+        AreaMap map = AreaInitialiser.getMap();
+        CostStore store = CostInitialiser.getStore();
+        int n = Network.size();
+        AreaTable[] tables = new AreaTable[n];
+        long entries = 0;
+        int nodes = 0;
+        for (int i = 0; i < n; i++) {
+            tables[i] = ((DistanceVectorProtocol) Network.get(i).getProtocol(pid)).getAreaTable();
+            if (tables[i] != null) {
+                entries += tables[i].entries();
+                nodes++;
+            }
+        }
+        if (map == null || nodes == 0) {
+            return false;
+        }
+        /* The cost store's rows serve as the adjacency of the flat search */
+        int[] offset = new int[n + 1];
+        int[] adj = new int[store.links()];
+        int[] dst = new int[adj.length];
+        int[] cost = new int[adj.length];
+        for (int i = 0; i < n; i++) {
+            offset[i] = store.start(i);
+            for (int e = store.start(i); e < store.end(i); e++) {
+                adj[e] = e;
+                dst[e] = store.neighbour(e);
+                cost[e] = store.cost(e);
+            }
+        }
+        offset[n] = store.end(n - 1);
+        int[] dist = new int[n];
+        int[] pred = new int[n];
+        int count = sources == 0 || sources > n ? n : sources;
+        long pairs = 0, lost = 0;
+        double sum = 0, max = 0;
+        for (int r = 0; r < count; r++) {
+            int s = (int) ((long) r * n / count);
+            if (tables[s] == null) {
+                continue;
+            }
+            Dijkstra.search(s, n, offset, adj, dst, cost, dist, pred);
+            for (int d = 0; d < n; d++) {
+                if (d == s || dist[d] == DistanceVector.INFINITY) {
+                    continue;
+                }
+                pairs++;
+                long walked = walk(tables, map, store, s, d);
+                if (walked < 0) {
+                    lost++;
+                    continue;
+                }
+                double stretch = (double) walked / dist[d];
+                sum += stretch;
+                max = Math.max(max, stretch);
+            }
+        }
+        if (!header) {
+            System.out.println("cycle,pairs,unrouted,mean_stretch,max_stretch,entries,flat_entries");
+            header = true;
+        }
+        long routed = pairs - lost;
+        System.out.println(String.format(Locale.ROOT, "%d,%d,%d,%.4f,%.4f,%.1f,%d", CommonState.getTime(),
+                pairs, lost, routed > 0 ? sum / routed : 0, max, (double) entries / nodes, n));
+        return false;
+    }
+
+    /**
+     * Follows the next hops from a source to a destination.
+     *
+     * @return cost of the route taken, -1 if there is none
+     */
+    private static long walk(AreaTable[] tables, AreaMap map, CostStore store, int s, int d) {
+        long total = 0;
+        /* A route longer than the network loops */
+        for (int x = s, steps = 0; x != d; steps++) {
+            int next = steps < tables.length && tables[x] != null ? tables[x].nextHop(d, map) : -1;
+            if (next < 0) {
+                return -1;
+            }
+            int c = store.getCost(x, next);
+            if (c == CostStore.NO_LINK) {
+                return -1;
+            }
+            total += c;
+            x = next;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,700 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import peersim.cdsim.CDSimulator;
+import peersim.cdsim.CDState;
+import peersim.config.Configuration;
+import peersim.config.IllegalParameterException;
+import peersim.config.ParsedProperties;
+import peersim.core.CommonState;
+import peersim.core.Control;
+import peersim.core.GeneralNode;
+import peersim.core.Linkable;
+import peersim.core.Network;
+import peersim.edsim.EDSimulator;
+import peersim.reports.GraphObserver;
+import peersim.util.ExtendedRandom;
+
+/**
+ * The class runs a grid of simulations in one JVM, several at a time, and writes one line of results per run.
+ * Run with "java dv.Sweep sweep.properties", or "gradle sweep -Psweep=sweep.properties".
+ *
+ * The sweep file holds "key value" lines: "scenarios" the PeerSim configuration files to run,
+ * "param.&lt;key&gt;" the values to give a configuration key, separated by spaces, "parallelism" runs at a time
+ * (defaults to the number of available processors), "outf" results file (default sweep.csv), "dir" optional
+ * directory for each run's output, "topology" the initialisers that build the network (default "rnd ci",
+ * "none" to build it in every run). Each scenario is run with every combination of the swept values.
+ * "{run}" in any configuration value is replaced with the run number, so that runs can write their own files.
+ *
+ * PeerSim and the controls keep their state in static fields, so runs at the same time load them in class
+ * loaders of their own. A loader is kept for the next run whose protocols are configured the same, so that
+ * the simulation's classes stay compiled from one run to the next; the static state the previous run left,
+ * in PeerSim and in the controls, is reset before. Classes without static state, such as the path engines,
+ * the cost store and the tables, are loaded once for all runs.
+ *
+ * Runs of a scenario that only differ in keys other than random.seed, network.size and those of the topology
+ * initialisers and their Linkable share one network. The first of them records the Linkables, the cost store
+ * and the random generator right after the topology initialisers, and the others restore them in place of
+ * running the initialisers, so that their results are the same as if they had built it. The topology
+ * initialisers should come first, and "sweep" is reserved as the name of the recording initialiser.
+ *
+ * Results have one line per run: run number, scenario, swept values, whether the network was built, recorded
+ * or reused, "ok" or the error, the last cycle, wall-clock milliseconds, and the totals of the Metrics counters.
+ */
+public class Sweep {
+
+    private static final String PAR_SCENARIOS = "scenarios";
+    private static final String PAR_PARAM = "param.";
+    private static final String PAR_PARALLELISM = "parallelism";
+    private static final String PAR_FILEPATH = "outf";
+    private static final String PAR_DIR = "dir";
+    private static final String PAR_TOPOLOGY = "topology";
+    /* Name of the initialiser that records or restores the network */
+    private static final String INIT = "sweep";
+    /* Top-level classes without per-run static state, loaded once for all runs */
+    private static final Set<String> SHARED = new HashSet<>(Arrays.asList("dv.AreaMap", "dv.AreaTable",
+            "dv.BellmanFord", "dv.BucketDijkstra", "dv.CostStore", "dv.DistanceVector", "dv.Edge", "dv.EdgeList",
+            "dv.EdgeSet", "dv.Multipath", "dv.Path", "dv.PathEngine", "dv.SharedTopology", "dv.Topology",
+            "dv.VectorMessage", "dv.VectorUpdate", "dv.Sweep$Wiring"));
+
+    /* Output of the run on each thread, unset for the sweep's own messages */
+    private static final ThreadLocal<OutputStream> output = new ThreadLocal<>();
+    /* Network recorded or restored in this class loader's run */
+    private static Wiring wiring;
+
+    private final String[] scenarios;       //configuration files
+    private final String[] keys;            //swept keys, sorted
+    private final String[][] values;       //values per swept key
+    private final int parallelism;          //runs at a time
+    private final String outf;              //results file
+    private final String dir;               //run output directory, null to discard it
+    private final List<String> topology;    //initialisers that build the network
+    private final URL[] classpath;          //classpath of the run loaders
+    /* Networks recorded or being recorded, by topology key */
+    private final Map<String, CompletableFuture<Wiring>> networks = new ConcurrentHashMap<>();
+    /* Runs still to use each network */
+    private final Map<String, AtomicInteger> users = new HashMap<>();
+    /* Class loaders no run is using, by protocol configuration */
+    private final Map<String, Queue<RunLoader>> loaders = new ConcurrentHashMap<>();
+    /* Standard error before the runs were redirected */
+    private PrintStream console;
+
+    /**
+     * A constructor.
+     *
+     * @param sweep the sweep file's properties.
+     */
+    public Sweep(Properties sweep) {
+        String list = sweep.getProperty(PAR_SCENARIOS, "").trim();
+        if (list.isEmpty()) {
+            throw new IllegalParameterException(PAR_SCENARIOS, "No scenario given");
+        }
+        this.scenarios = list.split("\\s+");
+        TreeSet<String> swept = new TreeSet<>();
+        for (String name : sweep.stringPropertyNames()) {
+            if (name.startsWith(PAR_PARAM)) {
+                swept.add(name.substring(PAR_PARAM.length()));
+            }
+        }
+        this.keys = swept.toArray(new String[0]);
+        this.values = new String[keys.length][];
+        for (int k = 0; k < keys.length; k++) {
+            values[k] = sweep.getProperty(PAR_PARAM + keys[k]).trim().split("\\s+");
+        }
+        this.parallelism = Integer.parseInt(sweep.getProperty(PAR_PARALLELISM,
+                Integer.toString(Runtime.getRuntime().availableProcessors())).trim());
+        if (parallelism <= 0) {
+            throw new IllegalParameterException(PAR_PARALLELISM, "Must be positive");
+        }
+        this.outf = sweep.getProperty(PAR_FILEPATH, "sweep.csv").trim();
+        String directory = sweep.getProperty(PAR_DIR);
+        this.dir = directory == null ? null : directory.trim();
+        String names = sweep.getProperty(PAR_TOPOLOGY, "rnd ci").trim();
+        this.topology = names.equals("none") ? new ArrayList<String>() : Arrays.asList(names.split("\\s+"));
+        String[] entries = System.getProperty("java.class.path").split(File.pathSeparator);
+        this.classpath = new URL[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            try {
+                classpath[i] = Paths.get(entries[i]).toUri().toURL();
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Bad classpath entry " + entries[i], e);
+            }
+        }
+    }
+
+    /**
+     * Runs a sweep.
+     *
+     * @param args the sweep file.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 1) {
+            System.err.println("Usage: java dv.Sweep <sweep file>");
+            System.exit(1);
+        }
+        Properties sweep = new Properties();
+        try (Reader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            sweep.load(reader);
+        }
+        new Sweep(sweep).run();
+    }
+
+    /**
+     * Runs every combination of every scenario and writes the results.
+     */
+    public void run() throws IOException, InterruptedException {
+        List<Run> runs = new ArrayList<>();
+        for (String scenario : scenarios) {
+            Properties base = new ParsedProperties(scenario);
+            int combinations = 1;
+            for (String[] v : values) {
+                combinations *= v.length;
+            }
+            for (int c = 0; c < combinations; c++) {
+                String[] chosen = new String[keys.length];
+                for (int k = keys.length - 1, rest = c; k >= 0; k--) {
+                    chosen[k] = values[k][rest % values[k].length];
+                    rest /= values[k].length;
+                }
+                Run run = new Run(runs.size(), scenario, base, chosen);
+                if (run.key != null) {
+                    users.computeIfAbsent(run.key, key -> new AtomicInteger()).incrementAndGet();
+                }
+                runs.add(run);
+            }
+        }
+        if (dir != null) {
+            Files.createDirectories(Paths.get(dir));
+        }
+        console = System.err;
+        PrintStream out = System.out, err = System.err;
+        System.setOut(new PrintStream(new Redirect(out), true));
+        System.setErr(new PrintStream(new Redirect(err), true));
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            /* Runs start in order, so the run recording a network starts before those waiting for it */
+            List<Future<String>> lines = new ArrayList<>(runs.size());
+            for (Run run : runs) {
+                lines.add(pool.submit(() -> execute(run, runs.size())));
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(outf), StandardCharsets.UTF_8)) {
+                StringBuilder header = new StringBuilder("run,scenario");
+                for (String key : keys) {
+                    header.append(',').append(csv(key));
+                }
+                header.append(",network,status,cycles,ms,messages,edges,bytes,duplicates,relaxations,rounds\n");
+                writer.write(header.toString());
+                for (Future<String> line : lines) {
+                    writer.write(line.get());
+                }
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        } finally {
+            pool.shutdownNow();
+            System.setOut(out);
+            System.setErr(err);
+            for (Queue<RunLoader> idle : loaders.values()) {
+                for (RunLoader loader : idle) {
+                    loader.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Executes one run in a class loader no other run is using, kept for a later run if this one succeeds.
+     *
+     * @param run the run.
+     * @param count number of runs in the sweep.
+     * @return the run's line of results
+     */
+    private String execute(Run run, int count) throws IOException {
+        OutputStream out = dir == null ? new Discard()
+                : new BufferedOutputStream(Files.newOutputStream(Paths.get(dir, run.number + ".out")));
+        CompletableFuture<Wiring> recording = null;
+        Wiring preset = null;
+        if (run.key != null) {
+            CompletableFuture<Wiring> future = new CompletableFuture<>();
+            CompletableFuture<Wiring> known = networks.putIfAbsent(run.key, future);
+            if (known == null) {
+                recording = future;
+            } else {
+                preset = known.join();
+            }
+        }
+        String network = "built";
+        Properties config = run.config;
+        if (preset != null) {
+            network = "reused";
+            config = run.configure(Restore.class);
+        } else if (recording != null) {
+            network = "recorded";
+            config = run.configure(Record.class);
+        }
+        Wiring[] recorded = new Wiring[1];
+        String status = "ok";
+        long[] totals = new long[6];
+        long start = System.nanoTime();
+        Queue<RunLoader> idle = loaders.computeIfAbsent(run.protocols, key -> new ConcurrentLinkedQueue<>());
+        RunLoader loader = idle.poll();
+        output.set(out);
+        try {
+            if (loader == null) {
+                loader = new RunLoader(classpath);
+            }
+            Method simulate = loader.loadClass(Sweep.class.getName())
+                    .getDeclaredMethod("simulate", Properties.class, Wiring.class, Wiring[].class);
+            simulate.setAccessible(true);
+            totals = (long[]) simulate.invoke(null, config, preset, recorded);
+            idle.add(loader);
+            loader = null;
+        } catch (InvocationTargetException e) {
+            status = String.valueOf(e.getCause());
+        } catch (ReflectiveOperationException | LinkageError e) {
+            status = e.toString();
+        } finally {
+            output.remove();
+            out.close();
+            /* A failed run may leave state that is not reset */
+            if (loader != null) {
+                loader.close();
+            }
+            if (recording != null) {
+                /* Runs waiting for a network that could not be recorded build their own */
+                recording.complete(recorded[0]);
+            }
+            if (run.key != null && users.get(run.key).decrementAndGet() == 0) {
+                networks.remove(run.key);
+            }
+        }
+        long ms = (System.nanoTime() - start) / 1000000;
+        console.println("Sweep: run " + run.number + " of " + count + " " + status + " in " + ms + " ms");
+        StringBuilder line = new StringBuilder(128).append(run.number).append(',').append(csv(run.scenario));
+        for (String value : run.values) {
+            line.append(',').append(csv(value));
+        }
+        line.append(',').append(network).append(',').append(csv(status)).append(',').append(totals[0])
+                .append(',').append(ms);
+        for (int k = 1; k < totals.length; k++) {
+            line.append(',').append(totals[k]);
+        }
+        return line.append('\n').toString();
+    }
+
+    /**
+     * Runs a simulation in the calling class loader. Called by reflection in a run's own loader.
+     *
+     * @param config the run's configuration.
+     * @param preset network to restore, or null.
+     * @param recorded output for the network recorded by the run, if any.
+     * @return the last cycle followed by the Metrics totals
+     */
+    static long[] simulate(Properties config, Wiring preset, Wiring[] recorded) throws ReflectiveOperationException {
+        wiring = preset;
+        reset(config);
+        System.err.println("Random seed: " + CommonState.r.getLastSeed());
+        if (CDSimulator.isConfigurationCycleDriven()) {
+            CDSimulator.nextExperiment();
+        } else if (EDSimulator.isConfigurationEventDriven()) {
+            EDSimulator.nextExperiment();
+        } else {
+            throw new IllegalArgumentException("Unknown simulation type");
+        }
+        recorded[0] = wiring;
+        long[] totals = Metrics.totals();
+        long[] result = new long[totals.length + 1];
+        result[0] = CommonState.getTime();
+        System.arraycopy(totals, 0, result, 1, totals.length);
+        return result;
+    }
+
+    /**
+     * Puts the static state a previous run left in the calling class loader back as a new loader has it,
+     * with the run's configuration and the random generator seeded from it. PeerSim keeps most of it in
+     * private fields, which are set through reflection.
+     *
+     * @param config the run's configuration.
+     */
+    private static void reset(Properties config) throws ReflectiveOperationException {
+        /* PeerSim only takes a configuration once */
+        set(Configuration.class, "config", null);
+        Configuration.setConfig(config);
+        set(CommonState.class, "time", 0L);
+        set(CommonState.class, "endtime", -1L);
+        set(CommonState.class, "toshift", -1);
+        set(CommonState.class, "phase", CommonState.PHASE_UNKNOWN);
+        CommonState.r = null;
+        CommonState.initializeRandom(Configuration.getLong(CommonState.PAR_SEED, System.currentTimeMillis()));
+        set(CDState.class, "ctime", -1);
+        set(CDState.class, "cycle", -1);
+        /* Node IDs start again from 0, the prototype takes -1 */
+        set(GeneralNode.class, "counterID", -1L);
+        /* The graph GraphObservers share is cached by time and protocol */
+        set(GraphObserver.class, "lastpid", -1234);
+        set(GraphObserver.class, "time", -1234L);
+        set(GraphObserver.class, "phase", -1234);
+        set(GraphObserver.class, "ctime", -1234);
+        set(GraphObserver.class, "needUndir", false);
+        set(GraphObserver.class, "dirg", null);
+        set(GraphObserver.class, "undirg", null);
+        Metrics.reset();
+        DistanceVectorProtocol.reset();
+        CostInitialiser.setStore(null);
+        AreaInitialiser.reset();
+        Churn.reset();
+        RouteService.reset();
+    }
+
+    /**
+     * Sets a static field, whatever its access.
+     */
+    private static void set(Class<?> holder, String name, Object value) throws ReflectiveOperationException {
+        Field field = holder.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(null, value);
+    }
+
+    /**
+     * Quotes a CSV field if needed.
+     */
+    private static String csv(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * The class is one run of the sweep: a scenario with one combination of the swept values.
+     */
+    private final class Run {
+
+        final int number;                   //run number, from 0
+        final String scenario;              //configuration file
+        final String[] values;              //swept values, in key order
+        final Properties config;            //configuration with the values applied
+        final List<String> order;           //initialisers in the order PeerSim runs them
+        final String linkable;              //Linkable wired by the topology initialisers
+        final String key;                   //topology key, null if the network cannot be shared
+        final String protocols;             //scenario and protocol configuration, runs alike can share a loader
+
+        Run(int number, String scenario, Properties base, String[] values) {
+            this.number = number;
+            this.scenario = scenario;
+            this.values = values;
+            this.config = new Properties();
+            config.putAll(base);
+            for (int k = 0; k < keys.length; k++) {
+                config.setProperty(keys[k], values[k]);
+            }
+            for (String name : config.stringPropertyNames()) {
+                String value = config.getProperty(name);
+                if (value.contains("{run}")) {
+                    config.setProperty(name, value.replace("{run}", Integer.toString(number)));
+                }
+            }
+            this.order = order();
+            this.linkable = linkable();
+            this.key = key();
+            this.protocols = protocols();
+        }
+
+        /**
+         * @return the scenario and the protocol keys, which PeerSim reads once per class loader
+         */
+        private String protocols() {
+            StringBuilder protocols = new StringBuilder(scenario);
+            for (String name : new TreeSet<>(config.stringPropertyNames())) {
+                if (name.startsWith("protocol.")) {
+                    protocols.append('\n').append(name).append('=').append(config.getProperty(name).trim());
+                }
+            }
+            return protocols.toString();
+        }
+
+        /**
+         * @return the initialisers in the order PeerSim runs them, null if given by order.init
+         */
+        private List<String> order() {
+            String include = config.getProperty("include.init");
+            if (include != null) {
+                List<String> names = new ArrayList<>();
+                for (String name : include.split("\\W+")) {
+                    if (!name.isEmpty()) {
+                        names.add(name);
+                    }
+                }
+                return names;
+            }
+            if (config.getProperty("order.init") != null) {
+                return null;
+            }
+            TreeSet<String> names = new TreeSet<>();
+            for (String name : config.stringPropertyNames()) {
+                if (name.startsWith("init.") && name.indexOf('.', 5) < 0) {
+                    names.add(name.substring(5));
+                }
+            }
+            return new ArrayList<>(names);
+        }
+
+        /**
+         * @return the Linkable of the first topology initialiser that names one, or null
+         */
+        private String linkable() {
+            for (String name : topology) {
+                String protocol = config.getProperty("init." + name + ".linkable",
+                        config.getProperty("init." + name + ".protocol"));
+                if (protocol != null) {
+                    return protocol.trim();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the values the network depends on, or null if it cannot be shared
+         */
+        private String key() {
+            if (topology.isEmpty() || order == null || !order.containsAll(topology) || order.contains(INIT)
+                    || config.getProperty("init." + INIT) != null || linkable == null
+                    || config.getProperty("random.seed") == null) {
+                return null;
+            }
+            StringBuilder key = new StringBuilder(scenario);
+            for (String name : new TreeSet<>(config.stringPropertyNames())) {
+                boolean part = name.equals("random.seed") || name.equals("network.size")
+                        || name.equals("protocol." + linkable) || name.startsWith("protocol." + linkable + ".");
+                for (String init : topology) {
+                    part |= name.equals("init." + init) || name.startsWith("init." + init + ".");
+                }
+                if (part) {
+                    key.append('\n').append(name).append('=').append(config.getProperty(name).trim());
+                }
+            }
+            return key.toString();
+        }
+
+        /**
+         * Configures the run to record or restore the network.
+         *
+         * @param control Record or Restore.
+         * @return the configuration
+         */
+        Properties configure(Class<? extends Control> control) {
+            Properties modified = new Properties();
+            modified.putAll(config);
+            List<String> names = new ArrayList<>(order.size() + 1);
+            int at = 0;
+            for (String name : order) {
+                if (topology.contains(name)) {
+                    if (control == Record.class) {
+                        names.add(name);
+                    }
+                    at = names.size();
+                } else {
+                    names.add(name);
+                }
+            }
+            names.add(at, INIT);
+            modified.setProperty("include.init", String.join(" ", names));
+            modified.setProperty("init." + INIT, control.getName());
+            modified.setProperty("init." + INIT + ".linkable", linkable);
+            return modified;
+        }
+    }
+
+    /**
+     * The class holds a recorded network. It is loaded once and public, so that runs in other class loaders
+     * can read it.
+     */
+    public static final class Wiring {
+
+        public final int[][] links;         //neighbour IDs per node, in Linkable order
+        public final CostStore store;       //link costs, copied on use
+        public final byte[] random;         //random generator after the topology initialisers
+
+        public Wiring(int[][] links, CostStore store, byte[] random) {
+            this.links = links;
+            this.store = store;
+            this.random = random;
+        }
+    }
+
+    /**
+     * The initialiser records the network built by the topology initialisers.
+     * Parameters: "linkable" the Linkable protocol.
+     */
+    public static class Record implements Control {
+
+        private final int pid;              //Linkable protocol ID
+
+        public Record(String prefix) {
+            this.pid = Configuration.getPid(prefix + ".linkable");
+        }
+
+        @Override
+        public boolean execute() {
+            int[][] links = new int[Network.size()][];
+            for (int i = 0; i < links.length; i++) {
+                Linkable lnk = (Linkable) Network.get(i).getProtocol(pid);
+                links[i] = new int[lnk.degree()];
+                for (int j = 0; j < links[i].length; j++) {
+                    links[i][j] = (int) lnk.getNeighbor(j).getID();
+                }
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(CommonState.r);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot record the random generator", e);
+            }
+            wiring = new Wiring(links, CostInitialiser.getStore().copy(), bytes.toByteArray());
+            return false;
+        }
+    }
+
+    /**
+     * The initialiser restores a recorded network in place of the topology initialisers.
+     * Parameters: "linkable" the Linkable protocol.
+     */
+    public static class Restore implements Control {
+
+        private final int pid;              //Linkable protocol ID
+
+        public Restore(String prefix) {
+            this.pid = Configuration.getPid(prefix + ".linkable");
+        }
+
+        @Override
+        public boolean execute() {
+            int[][] links = wiring.links;
+            for (int i = 0; i < links.length; i++) {
+                Linkable lnk = (Linkable) Network.get(i).getProtocol(pid);
+                for (int j : links[i]) {
+                    lnk.addNeighbor(Network.get(j));
+                }
+            }
+            CostInitialiser.setStore(wiring.store.copy());
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(wiring.random))) {
+                CommonState.r = (ExtendedRandom) in.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                throw new IllegalStateException("Cannot restore the random generator", e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The class loads PeerSim and the simulation's classes again for runs at the same time, except the shared ones.
+     */
+    private static final class RunLoader extends URLClassLoader {
+
+        RunLoader(URL[] classpath) {
+            /* Skip the application loader, which holds the sweep's own copies */
+            super(classpath, ClassLoader.getSystemClassLoader().getParent());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            int nested = name.indexOf('$');
+            if (SHARED.contains(name) || (nested > 0 && SHARED.contains(name.substring(0, nested)))) {
+                return Sweep.class.getClassLoader().loadClass(name);
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+
+    /**
+     * The class sends what is written to the output of the run on the current thread.
+     */
+    private static final class Redirect extends OutputStream {
+
+        private final OutputStream fallback;    //stream for threads without a run
+
+        Redirect(OutputStream fallback) {
+            this.fallback = fallback;
+        }
+
+        private OutputStream target() {
+            OutputStream target = output.get();
+            return target != null ? target : fallback;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target().flush();
+        }
+    }
+
+    /**
+     * The class drops what is written to it.
+     */
+    private static final class Discard extends OutputStream {
+
+        @Override
+        public void write(int b) { }
+
+        @Override
+        public void write(byte[] b, int off, int len) { }
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The class is an immutable snapshot of the whole network's edges in compressed sparse rows.
+ * Row i holds the edges whose source is node i, in the order node i announced them, so that
+ * relaxing row i first and then the other rows in ID order visits the edges in the same order
+ * as a graph assembled by flooding.
+ *
+ * A single snapshot is shared by every node, instead of every node holding its own copy.
+ * When links change, SharedTopology publishes a new snapshot with the edges that differ, so that nodes can
+ * move their overlays onto it and keep them down to the edges they still know differently.
+ */
+public final class Topology {
+
+    public final int size;              //number of nodes
+    private final int[] offset;         //start of each node's row, size+1 entries
+    private final int[] src;            //edge source node IDs
+    private final int[] dst;            //edge destination node IDs
+    private final int[] cost;           //edge costs
+    private final int links;            //edges with a finite cost
+
+    /**
+     * Builds a snapshot from every node's own edges.
+     *
+     * @param local edges announced by each node, indexed by node ID.
+     */
+    public Topology(List<EdgeList> local) {
+        this.size = local.size();
+        this.offset = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            offset[i + 1] = offset[i] + local.get(i).size();
+        }
+        int m = offset[size];
+        this.src = new int[m];
+        this.dst = new int[m];
+        this.cost = new int[m];
+        for (int i = 0; i < size; i++) {
+            EdgeList edges = local.get(i);
+            System.arraycopy(edges.sources(), 0, src, offset[i], edges.size());
+            System.arraycopy(edges.destinations(), 0, dst, offset[i], edges.size());
+            System.arraycopy(edges.costs(), 0, cost, offset[i], edges.size());
+        }
+        int finite = 0;
+        for (int c : cost) {
+            if (c != Integer.MAX_VALUE) {
+                finite++;
+            }
+        }
+        this.links = finite;
+    }
+
+    /**
+     * @return number of edges
+     */
+    public int edges() {
+        return src.length;
+    }
+
+    /**
+     * @return number of edges with a finite cost, removed links excluded
+     */
+    public int links() {
+        return links;
+    }
+
+    /**
+     * @param i node ID.
+     * @return position of the node's first edge, the row ends at start(i + 1)
+     */
+    public int start(int i) {
+        return offset[i];
+    }
+
+    /**
+     * @param e position in the flat arrays.
+     * @return destination node ID of the edge at that position
+     */
+    public int destination(int e) {
+        return dst[e];
+    }
+
+    /**
+     * Position of an edge in the flat arrays.
+     *
+     * @param source source node ID.
+     * @param destination destination node ID.
+     * @return the position, or -1 if the edge is not in the snapshot
+     */
+    public int index(int source, int destination) {
+        if (source < 0 || source >= size) {
+            return -1;
+        }
+        for (int e = offset[source]; e < offset[source + 1]; e++) {
+            if (dst[e] == destination) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param e position in the flat arrays.
+     * @return cost of the edge at that position
+     */
+    public int cost(int e) {
+        return cost[e];
+    }
+
+    /**
+     * @param source source node ID.
+     * @param destination destination node ID.
+     * @return cost of the edge, Integer.MAX_VALUE if it is not in the snapshot
+     */
+    public int cost(int source, int destination) {
+        int e = index(source, destination);
+        return e >= 0 ? cost[e] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Lists the edges whose cost differs in a later snapshot, with their cost in this one.
+     * An edge missing from one of them costs Integer.MAX_VALUE there.
+     *
+     * @param latest the later snapshot, of the same size.
+     * @return the differing edges
+     */
+    public EdgeList differences(Topology latest) {
+        EdgeList differ = new EdgeList(4);
+        for (int s = 0; s < size; s++) {
+            for (int e = offset[s]; e < offset[s + 1]; e++) {
+                if (latest.cost(s, dst[e]) != cost[e]) {
+                    differ.add(s, dst[e], cost[e]);
+                }
+            }
+            for (int e = latest.offset[s]; e < latest.offset[s + 1]; e++) {
+                if (latest.cost[e] != Integer.MAX_VALUE && index(s, latest.dst[e]) < 0) {
+                    differ.add(s, latest.dst[e], Integer.MAX_VALUE);
+                }
+            }
+        }
+        return differ;
+    }
+
+    /**
+     * Computes shortest paths from a source over the snapshot, preferring the source's own row.
+     *
+     * @param engine shortest path algorithm.
+     * @param source source node ID.
+     * @param dist output distances, at least size long.
+     * @param pred output predecessors, at least size long.
+     * @return number of relaxation rounds performed
+     */
+    public int shortestPaths(PathEngine engine, int source, int[] dist, int[] pred) {
+        /* The rows are already grouped by source, the engine reads them in place */
+        return engine.shortestPaths(source, size, offset, null, dst, cost, null, dist, pred);
+    }
+
+    /**
+     * Computes shortest paths from a source over the snapshot with some edges overridden.
+     *
+     * @param engine shortest path algorithm.
+     * @param source source node ID.
+     * @param overlay edges that differ from the snapshot, a cost of Integer.MAX_VALUE removes the edge.
+     * @param dist output distances, at least size long.
+     * @param pred output predecessors, at least size long.
+     * @return number of relaxation rounds performed
+     */
+    public int shortestPaths(PathEngine engine, int source, Overlay overlay, int[] dist, int[] pred) {
+        if (overlay.size() == 0) {
+            return shortestPaths(engine, source, dist, pred);
+        }
+        /* Only the rows of the overlay's edges are replaced, the others are read in place */
+        return engine.shortestPaths(source, size, offset, null, dst, cost, overlay.patch(this), dist, pred);
+    }
+
+    /**
+     * The snapshot's edges with some overridden, as one list for Multipath and KShortest. Changed edges keep
+     * their position and new ones follow. Without overrides the list is backed by the snapshot and must not
+     * be changed.
+     *
+     * @param overlay edges that differ from the snapshot, a cost of Integer.MAX_VALUE removes the edge.
+     * @return the edges
+     */
+    public EdgeList edges(Overlay overlay) {
+        int m = src.length;
+        if (overlay.size() == 0) {
+            return new EdgeList(src, dst, cost, m);
+        }
+        int[] s = new int[m + overlay.size()];
+        int[] d = new int[s.length];
+        int[] c = new int[s.length];
+        System.arraycopy(src, 0, s, 0, m);
+        System.arraycopy(dst, 0, d, 0, m);
+        System.arraycopy(cost, 0, c, 0, m);
+        /* Patch changed edges in place, append new ones */
+        for (int k = 0; k < overlay.size(); k++) {
+            int e = index(overlay.source(k), overlay.destination(k));
+            if (e < 0) {
+                s[m] = overlay.source(k);
+                d[m] = overlay.destination(k);
+                e = m++;
+            }
+            c[e] = overlay.cost(k);
+        }
+        return new EdgeList(s, d, c, m);
+    }
+
+    /**
+     * The class holds the rows of a few nodes, which replace theirs in a search over the snapshot.
+     * See PathEngine.
+     */
+    public static final class Patch {
+
+        final int[] nodes;              //patched node IDs, increasing
+        final int[] offset;             //row starts in dst and cost, one more than nodes
+        final int[] dst;                //edge destination node IDs
+        final int[] cost;               //edge costs
+
+        private Patch(int[] nodes, int[] offset, int[] dst, int[] cost) {
+            this.nodes = nodes;
+            this.offset = offset;
+            this.dst = dst;
+            this.cost = cost;
+        }
+
+        /**
+         * @param u node ID.
+         * @return position of the node's row, negative if the node is not patched
+         */
+        int row(int u) {
+            return Arrays.binarySearch(nodes, u);
+        }
+    }
+
+    /**
+     * The class holds the few edges a node knows differently from the shared snapshot.
+     * An edge is dropped as soon as the snapshot has it with the same cost again.
+     */
+    public static final class Overlay {
+
+        private EdgeSet known = new EdgeSet(4);
+        private int[] src = new int[4], dst = new int[4], cost = new int[4];
+        private int size;
+        private Patch patch;            //rows built for the search, null until needed again
+        private Topology patched;       //snapshot the rows were built over
+
+        /**
+         * Records an edge unless the snapshot or the overlay already has it with the same cost.
+         *
+         * @param topology the shared snapshot.
+         * @param s learned edge's source node ID.
+         * @param d learned edge's destination node ID.
+         * @param c learned edge's cost.
+         * @return the cost known before, Integer.MAX_VALUE for an unknown edge, c if nothing changed
+         */
+        public int learn(Topology topology, int s, int d, int c) {
+            int k = known.indexOf(s, d);
+            if (k >= 0) {
+                int old = cost[k];
+                if (old != c) {
+                    cost[k] = c;
+                    if (topology.cost(s, d) == c) {
+                        /* Known as the snapshot has it again */
+                        compact(topology);
+                    }
+                    patch = null;
+                }
+                return old;
+            }
+            int old = topology.cost(s, d);
+            if (old == c) {
+                return c;
+            }
+            append(s, d, c);
+            return old;
+        }
+
+        /**
+         * Moves the overlay onto a later snapshot, keeping the edges as the node knows them: edges that
+         * the later snapshots changed and the overlay does not hold are recorded with their earlier cost,
+         * and edges the later snapshot has with the same cost are dropped.
+         *
+         * @param from the version the overlay is over.
+         * @param to a later version.
+         * @return to, or the latest version before it if the chain of replacements does not reach it
+         */
+        public SharedTopology.Version rebase(SharedTopology.Version from, SharedTopology.Version to) {
+            SharedTopology.Version at = from;
+            for (SharedTopology.Version next = at.next(); at != to && next != null; next = at.next()) {
+                EdgeList differ = next.changes;
+                for (int j = 0; j < differ.size(); j++) {
+                    int s = differ.source(j), d = differ.destination(j);
+                    if (known.indexOf(s, d) < 0) {
+                        append(s, d, differ.cost(j));
+                    }
+                }
+                at = next;
+            }
+            if (at != from) {
+                compact(at.snapshot);
+            }
+            return at;
+        }
+
+        /**
+         * The overlay's rows for a search, kept until the overlay changes.
+         *
+         * @param topology the snapshot the overlay is over.
+         * @return rows of the nodes with overlay edges, the snapshot's edges first with overridden costs,
+         * then the new ones
+         */
+        Patch patch(Topology topology) {
+            if (patch != null && patched == topology) {
+                return patch;
+            }
+            /* Overlay entries by source node */
+            long[] order = new long[size];
+            for (int k = 0; k < size; k++) {
+                order[k] = (long) src[k] << 32 | k;
+            }
+            Arrays.sort(order);
+            int[] nodes = new int[size];
+            int count = 0, edges = 0;
+            for (int j = 0; j < size; j++) {
+                int s = (int) (order[j] >>> 32);
+                if (count == 0 || nodes[count - 1] != s) {
+                    nodes[count++] = s;
+                    edges += topology.offset[s + 1] - topology.offset[s];
+                }
+            }
+            int[] offset = new int[count + 1];
+            int[] pdst = new int[edges + size];
+            int[] pcost = new int[pdst.length];
+            int at = 0;
+            for (int r = 0, j = 0; r < count; r++) {
+                int s = nodes[r];
+                offset[r] = at;
+                int row = at;
+                for (int e = topology.offset[s]; e < topology.offset[s + 1]; e++, at++) {
+                    pdst[at] = topology.dst[e];
+                    pcost[at] = topology.cost[e];
+                }
+                for (; j < size && (int) (order[j] >>> 32) == s; j++) {
+                    int k = (int) order[j];
+                    int e = topology.index(s, dst[k]);
+                    if (e >= 0) {
+                        pcost[row + e - topology.offset[s]] = cost[k];
+                    } else {
+                        pdst[at] = dst[k];
+                        pcost[at++] = cost[k];
+                    }
+                }
+            }
+            offset[count] = at;
+            patch = new Patch(Arrays.copyOf(nodes, count), offset, pdst, pcost);
+            patched = topology;
+            return patch;
+        }
+
+        /**
+         * Drops the edges the snapshot has with the same cost.
+         */
+        private void compact(Topology topology) {
+            int kept = 0;
+            for (int k = 0; k < size; k++) {
+                if (topology.cost(src[k], dst[k]) != cost[k]) {
+                    src[kept] = src[k];
+                    dst[kept] = dst[k];
+                    cost[kept++] = cost[k];
+                }
+            }
+            if (kept == size) {
+                return;
+            }
+            size = kept;
+            known = new EdgeSet(size);
+            for (int k = 0; k < size; k++) {
+                known.add(src[k], dst[k]);
+            }
+            patch = null;
+        }
+
+        private void append(int s, int d, int c) {
+            known.add(s, d);
+            if (size == src.length) {
+                src = Arrays.copyOf(src, size << 1);
+                dst = Arrays.copyOf(dst, size << 1);
+                cost = Arrays.copyOf(cost, size << 1);
+            }
+            src[size] = s;
+            dst[size] = d;
+            cost[size] = c;
+            size++;
+            patch = null;
+        }
+
+        public int size() { return size; }
+
+        public int source(int k) { return src[k]; }
+
+        public int destination(int k) { return dst[k]; }
+
+        public int cost(int k) { return cost[k]; }
+    }
+}
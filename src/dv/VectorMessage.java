@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * The class is a triggered update in its wire format, held in a pooled direct buffer.
+ *
+ * The format is a sequence of unsigned varints (7 bits per byte, low bits first): the sender's node ID,
+ * the number of entries, then for each entry in increasing destination order the gap to the previous
+ * destination, the cost plus one (0 for unreachable), and the predecessor and next hop as zigzag-encoded
+ * differences to the destination and to the predecessor. Costs and gaps are small, so most fields take
+ * one byte.
+ *
+ * A message is read in place by every receiver. The sender holds it while sending and each receiver
+ * while it is on its way, and it goes back to the pool once released by all.
+ */
+public final class VectorMessage {
+
+    /* Largest varint, in bytes */
+    private static final int VARINT = 5;
+    /* Smallest buffer, as a power of two */
+    private static final int MIN_SHIFT = 6;
+    /* Messages kept per buffer size */
+    private static final int POOLED = 64;
+    /* Free messages by buffer size, 2^(MIN_SHIFT+k) bytes */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final ArrayDeque<VectorMessage>[] free = new ArrayDeque[32 - MIN_SHIFT];
+
+    static {
+        for (int k = 0; k < free.length; k++) {
+            free[k] = new ArrayDeque<>();
+        }
+    }
+
+    private final ByteBuffer buffer;        //direct buffer, holds the message up to its limit
+    private final int bucket;               //pool the buffer goes back to
+    private int entries;                    //number of entries
+    private int holders;                    //sender and receivers still reading
+
+    private VectorMessage(int bucket) {
+        this.buffer = ByteBuffer.allocateDirect(1 << (MIN_SHIFT + bucket));
+        this.bucket = bucket;
+    }
+
+    /**
+     * Encodes the entries of a table into a message held by the caller.
+     *
+     * @param source sender node ID.
+     * @param destinations destinations to send, in increasing order.
+     * @param count number of destinations.
+     * @param cost cost per destination.
+     * @param via predecessor per destination.
+     * @param hop next hop per destination.
+     * @return the message
+     */
+    public static VectorMessage encode(int source, int[] destinations, int count, int[] cost, int[] via,
+            int[] hop) {
+        VectorMessage message = acquire(2 * VARINT + 4 * VARINT * count);
+        ByteBuffer out = message.buffer;
+        out.clear();
+        putVarint(out, source);
+        putVarint(out, count);
+        int previous = 0;
+        for (int k = 0; k < count; k++) {
+            int d = destinations[k];
+            putVarint(out, d - previous);
+            putVarint(out, cost[d] == DistanceVector.INFINITY ? 0 : cost[d] + 1);
+            putVarint(out, zigzag(via[d] - d));
+            putVarint(out, zigzag(hop[d] - via[d]));
+            previous = d;
+        }
+        out.flip();
+        message.entries = count;
+        return message;
+    }
+
+    /**
+     * @return number of entries
+     */
+    public int entries() {
+        return entries;
+    }
+
+    /**
+     * @return size of the message in bytes
+     */
+    public int bytes() {
+        return buffer.limit();
+    }
+
+    /**
+     * Adds a holder, for a receiver the message is sent to.
+     */
+    public synchronized void retain() {
+        holders++;
+    }
+
+    /**
+     * Drops a holder. The last one returns the message to the pool, so it must not be read afterwards.
+     */
+    public void release() {
+        synchronized (this) {
+            if (--holders > 0) {
+                return;
+            }
+        }
+        synchronized (free) {
+            if (free[bucket].size() < POOLED) {
+                free[bucket].push(this);
+            }
+        }
+    }
+
+    /**
+     * Decodes the message into the reader's arrays.
+     *
+     * @param reader arrays to decode into, reused from one message to the next.
+     * @return the update, valid until the reader decodes another message
+     */
+    public VectorUpdate decode(Reader reader) {
+        reader.position = 0;
+        int source = reader.varint(buffer);
+        int count = reader.varint(buffer);
+        reader.ensure(count);
+        int d = 0;
+        for (int k = 0; k < count; k++) {
+            d += reader.varint(buffer);
+            int c = reader.varint(buffer);
+            int v = d + unzigzag(reader.varint(buffer));
+            reader.destination[k] = d;
+            reader.cost[k] = c == 0 ? DistanceVector.INFINITY : c - 1;
+            reader.via[k] = v;
+            reader.hop[k] = v + unzigzag(reader.varint(buffer));
+        }
+        return new VectorUpdate(source, count, reader.destination, reader.cost, reader.via, reader.hop);
+    }
+
+    /**
+     * Size of an edge list in the same format: the number of edges, then each edge's source as a difference
+     * to the previous source, destination as a difference to its source, and cost plus one.
+     * Used to account for the linkstate flood, whose lists are handed over in memory.
+     *
+     * @param edges the list.
+     * @return size in bytes
+     */
+    public static int bytes(EdgeList edges) {
+        int size = varintSize(edges.size());
+        int[] src = edges.sources(), dst = edges.destinations(), cost = edges.costs();
+        int previous = 0;
+        for (int e = 0; e < edges.size(); e++) {
+            int c = cost[e];
+            size += varintSize(zigzag(src[e] - previous)) + varintSize(zigzag(dst[e] - src[e]))
+                    + varintSize(c == DistanceVector.INFINITY ? 0 : c + 1);
+            previous = src[e];
+        }
+        return size;
+    }
+
+    /**
+     * Takes a message from the pool, or a new one, with room for at least the given size.
+     */
+    private static VectorMessage acquire(int capacity) {
+        int bucket = Math.max(0, 32 - Integer.numberOfLeadingZeros(capacity - 1) - MIN_SHIFT);
+        VectorMessage message;
+        synchronized (free) {
+            message = free[bucket].poll();
+        }
+        if (message == null) {
+            message = new VectorMessage(bucket);
+        }
+        message.holders = 1;
+        return message;
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int varintSize(int value) {
+        return value == 0 ? 1 : (38 - Integer.numberOfLeadingZeros(value)) / 7;
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * The class holds the arrays messages are decoded into, so that receiving allocates no arrays.
+     * A reader may only be used by one thread.
+     */
+    public static final class Reader {
+
+        private int[] destination = new int[16];
+        private int[] cost = new int[16];
+        private int[] via = new int[16];
+        private int[] hop = new int[16];
+        private int position;               //next byte to read
+
+        private void ensure(int count) {
+            if (count > destination.length) {
+                int length = Math.max(count, destination.length << 1);
+                destination = new int[length];
+                cost = new int[length];
+                via = new int[length];
+                hop = new int[length];
+            }
+        }
+
+        private int varint(ByteBuffer in) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = in.get(position++);
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2018,
+ *     University of Reading, Computer science Department
+ *     CS2CA17 module - lab sessions
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU,
+ * Lesser General Public License version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Lesser General Public License for more details.
+ */
+package dv;
+
+/**
+ * The class represents a triggered update: the entries of a distance vector that changed
+ * since the sender last advertised it. Updates travel as a VectorMessage and are decoded into
+ * this form by the receiver.
+ */
+public class VectorUpdate {
+    public final int source;            //sender node ID
+    public final int size;              //number of entries
+    public final int[] destination;     //destination node ID per entry, valid up to size
+    public final int[] cost;            //sender's path cost per entry
+    public final int[] via;             //sender's predecessor per entry
+    public final int[] hop;             //sender's next hop per entry
+
+    /**
+     * A constructor.
+     *
+     * @param source sender node ID.
+     * @param size number of entries.
+     */
+    public VectorUpdate(int source, int size) {
+        this.source = source;
+        this.size = size;
+        this.destination = new int[size];
+        this.cost = new int[size];
+        this.via = new int[size];
+        this.hop = new int[size];
+    }
+
+    /**
+     * A constructor over existing arrays, which may be longer than the update. Used by VectorMessage
+     * to decode into arrays it reuses.
+     *
+     * @param source sender node ID.
+     * @param size number of entries.
+     * @param destination destination node ID per entry.
+     * @param cost sender's path cost per entry.
+     * @param via sender's predecessor per entry.
+     * @param hop sender's next hop per entry.
+     */
+    public VectorUpdate(int source, int size, int[] destination, int[] cost, int[] via, int[] hop) {
+        this.source = source;
+        this.size = size;
+        this.destination = destination;
+        this.cost = cost;
+        this.via = via;
+        this.hop = hop;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + source + ", " + size + " entries]";
+    }
+}